@@ -0,0 +1,209 @@
+package com.dotcms.plugin.sqs.bench;
+
+import com.dotcms.plugin.sqs.AppConfig;
+import com.dotcms.plugin.sqs.ContentletPayloadSerializer;
+import com.dotcms.plugin.sqs.OutboxLog;
+import com.dotcms.plugin.sqs.OutboxRelay;
+import com.dotcms.plugin.sqs.PayloadPipeline;
+import com.dotcms.plugin.sqs.SendGuardRegistry;
+import com.dotcms.plugin.sqs.SqsAsyncDispatcher;
+import com.dotcms.plugin.sqs.SqsBatchDispatcher;
+import com.dotcms.plugin.sqs.SqsClientRegistry;
+import com.dotcms.plugin.sqs.SqsMessageSender;
+import com.dotcms.plugin.sqs.SqsMetrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+/**
+ * What {@code SqsMessageSenderActionlet.executeAction} does for one contentlet, built without
+ * dotCMS: the contentlet is serialized here, as the actionlet does with the standard payload, and
+ * the message is sent with the actionlet's own {@link SqsMessageSender} in one of the send modes.
+ * Only the parameter handling and the App secrets lookup, which need a {@code WorkflowProcessor}
+ * and a running dotCMS, are replaced by fixed settings.
+ */
+public class ActionletSendPath implements AutoCloseable {
+
+    /** The send modes of the actionlet. */
+    public enum Mode {
+        /** Waits for {@code SendMessage}. */
+        SYNC,
+        /** Hands the message to the async dispatcher and returns. */
+        ASYNC,
+        /** Waits until the batch holding the message has been sent. */
+        BATCH,
+        /** Appends the message to the local outbox and returns; the relay sends it. */
+        OUTBOX;
+
+        public static Mode of(final String value) {
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private static final Region REGION = Region.US_EAST_1;
+
+    private final Mode mode;
+    private final String queueUrl;
+    private final AppConfig appConfig;
+    private final SqsMetrics metrics = new SqsMetrics();
+    private final SendGuardRegistry guards;
+    private final PayloadPipeline pipeline = new PayloadPipeline();
+    private final SqsClientRegistry registry;
+    private final SqsMessageSender sender;
+
+    private SqsAsyncDispatcher asyncDispatcher;
+    private SqsBatchDispatcher batchDispatcher;
+    private Path outboxDirectory;
+    private OutboxLog outboxLog;
+    private OutboxRelay outboxRelay;
+
+    /**
+     * @param mode           the send mode
+     * @param server         the fake SQS endpoint
+     * @param maxConnections pooled connections per client
+     * @param fsync          whether the outbox forces every append to disk
+     */
+    public ActionletSendPath(final Mode mode, final FakeSqsServer server, final int maxConnections, final boolean fsync)
+                    throws IOException {
+        this.mode = mode;
+        this.queueUrl = server.queueUrl("load-" + mode.name().toLowerCase(Locale.ROOT));
+        this.appConfig = AppConfig.builder()
+                .awsAccessKey(BenchmarkFixtures.ACCESS_KEY)
+                .awsSecretKey(BenchmarkFixtures.SECRET_KEY)
+                .maxConnections(maxConnections)
+                .build();
+        this.guards = BenchmarkFixtures.defaultGuards(metrics);
+        this.registry = new SqsClientRegistry(4, maxConnections, Duration.ofSeconds(60), Duration.ofHours(1), Duration.ofSeconds(1));
+
+        // Same sizes as the AWS_SQS_* defaults
+        switch (mode) {
+            case ASYNC:
+                asyncDispatcher = new SqsAsyncDispatcher(guards, 10_000, 2, 64, Duration.ofSeconds(30));
+                break;
+            case BATCH:
+                batchDispatcher = new SqsBatchDispatcher(guards, 2, 2);
+                break;
+            case OUTBOX:
+                outboxDirectory = Files.createTempDirectory("dotsqs-outbox-load");
+                outboxLog = new OutboxLog(outboxDirectory, 16L * 1024 * 1024, 512L * 1024 * 1024, fsync);
+                outboxRelay = new OutboxRelay(outboxLog, guards, 10, Duration.ofMillis(200), Duration.ofSeconds(60),
+                        hostId -> appConfig, (config, region) -> registry.getClient(region, config, server.getEndpoint()));
+                break;
+            default:
+                break;
+        }
+        // Refused sends fail instead of spooling, so the outbox only carries the outbox mode
+        this.sender = new SqsMessageSender(registry, server.getEndpoint(), guards, pipeline, metrics, asyncDispatcher,
+                batchDispatcher, outboxRelay, false, Duration.ofSeconds(60));
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Runs the send path for one contentlet, on the calling thread as a workflow thread would.
+     *
+     * @param contentlet the contentlet fields
+     * @throws Exception when the actionlet would fail the workflow action
+     */
+    public void execute(final Map<String, Object> contentlet) throws Exception {
+        final long serializationStart = System.nanoTime();
+        final String body = ContentletPayloadSerializer.serialize(contentlet, Collections.emptySet(), Collections.emptySet());
+        sender.send(SqsMessageSender.OutgoingMessage.builder()
+                .queueUrl(queueUrl)
+                .region(REGION)
+                .appConfig(appConfig)
+                .body(body)
+                .serializationNanos(System.nanoTime() - serializationStart)
+                .attributes(attributes(contentlet))
+                .async(mode == Mode.ASYNC)
+                .batch(mode == Mode.BATCH)
+                .outbox(mode == Mode.OUTBOX)
+                .queueFullPolicy(SqsAsyncDispatcher.QueueFullPolicy.BLOCK)
+                .build());
+    }
+
+    /**
+     * @return messages accepted from workflow threads but not sent yet
+     */
+    public long getBacklog() {
+        switch (mode) {
+            case ASYNC:
+                return asyncDispatcher.getQueueSize() + asyncDispatcher.getInFlight();
+            case OUTBOX:
+                return outboxLog.getPendingBytes();
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Waits until the messages accepted so far have left the dispatcher or the outbox.
+     *
+     * @return false if there was still a backlog when the timeout elapsed
+     */
+    public boolean awaitDrained(final Duration timeout) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        while (getBacklog() > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (asyncDispatcher != null) {
+            asyncDispatcher.shutdown(Duration.ofSeconds(30));
+        }
+        if (batchDispatcher != null) {
+            batchDispatcher.shutdown(Duration.ofSeconds(30));
+        }
+        if (outboxRelay != null) {
+            outboxRelay.shutdown(Duration.ofSeconds(30));
+            deleteQuietly(outboxDirectory);
+        }
+        pipeline.shutdown();
+        registry.shutdown();
+    }
+
+    /**
+     * The default attributes of the actionlet: content type, site and language.
+     */
+    private static Map<String, MessageAttributeValue> attributes(final Map<String, Object> contentlet) {
+        final Map<String, MessageAttributeValue> attributes = new LinkedHashMap<>();
+        attributes.put("contentType", string(contentlet.get("contentType")));
+        attributes.put("site", string(contentlet.get("host")));
+        attributes.put("language", MessageAttributeValue.builder()
+                .dataType("Number")
+                .stringValue(String.valueOf(contentlet.get("languageId")))
+                .build());
+        return attributes;
+    }
+
+    private static MessageAttributeValue string(final Object value) {
+        return MessageAttributeValue.builder().dataType("String").stringValue(String.valueOf(value)).build();
+    }
+
+    private static void deleteQuietly(final Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Could not delete outbox directory " + directory + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.dotcms.plugin.sqs.bench;
+
+import com.dotcms.plugin.sqs.AdaptiveRateLimiter;
+import com.dotcms.plugin.sqs.CircuitBreaker;
+import com.dotcms.plugin.sqs.SendGuard;
+import com.dotcms.plugin.sqs.SendGuardRegistry;
+import com.dotcms.plugin.sqs.SqsMetrics;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Synthetic contentlet maps and plugin services that can be built without a running dotCMS.
+ */
+public final class BenchmarkFixtures {
+
+    public static final String ACCESS_KEY = "AKIAFAKEBENCHMARK";
+    public static final String SECRET_KEY = "fake-secret-key";
+
+    private static final String[] WORDS = {"lorem", "ipsum", "dolor", "sit", "amet", "content", "publish",
+            "workflow", "queue", "message", "site", "page", "banner", "asset", "language", "category"};
+
+    private BenchmarkFixtures() {}
+
+    /**
+     * A contentlet map shaped like {@code Contentlet.getMap()} of a typical content type, with a
+     * body field of roughly the given size.
+     *
+     * @param bodyBytes approximate size of the rich text body
+     * @param seed      seed of the generated text
+     * @return the contentlet fields
+     */
+    public static Map<String, Object> contentlet(final int bodyBytes, final long seed) {
+        final Random random = new Random(seed);
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("identifier", UUID.nameUUIDFromBytes(("id" + seed).getBytes()).toString());
+        map.put("inode", UUID.nameUUIDFromBytes(("inode" + seed).getBytes()).toString());
+        map.put("contentType", "Blog");
+        map.put("stInode", "799f176a-d32e-4844-a07c-1b5fcd107578");
+        map.put("languageId", 1L);
+        map.put("host", "8a7d5e23-da1e-420a-b4f0-471e7da8ea2d");
+        map.put("folder", "SYSTEM_FOLDER");
+        map.put("title", sentence(random, 8));
+        map.put("urlTitle", "blog-post-" + seed);
+        map.put("author", "Jane Doe");
+        map.put("teaser", sentence(random, 40));
+        map.put("body", paragraphs(random, bodyBytes));
+        map.put("tags", Arrays.asList("aws", "sqs", "dotcms"));
+        map.put("categories", Arrays.asList("news", "technology"));
+        map.put("sortOrder", 0L);
+        map.put("live", Boolean.TRUE);
+        map.put("working", Boolean.TRUE);
+        map.put("archived", Boolean.FALSE);
+        map.put("modUser", "dotcms.org.1");
+        map.put("modDate", new Date(1_700_000_000_000L + seed));
+        map.put("publishDate", new Date(1_700_000_000_000L));
+        return map;
+    }
+
+    /**
+     * A guard registry with limits far above what the benchmarks send, so the guards only add
+     * their bookkeeping cost.
+     */
+    public static SendGuardRegistry unlimitedGuards(final SqsMetrics metrics) {
+        return new SendGuardRegistry(metrics, (url, queueMetrics) -> new SendGuard(url,
+                new AdaptiveRateLimiter(1_000_000, 1_000, 1_000_000),
+                new CircuitBreaker(1.0, Integer.MAX_VALUE, 10_000, 1_000),
+                queueMetrics, 0));
+    }
+
+    /**
+     * A guard registry with the default limits of {@code SendGuard.fromConfig}, so injected
+     * throttling and errors slow down and trip the guards as they would in dotCMS.
+     */
+    public static SendGuardRegistry defaultGuards(final SqsMetrics metrics) {
+        return new SendGuardRegistry(metrics, (url, queueMetrics) -> new SendGuard(url,
+                new AdaptiveRateLimiter(1000, 5, 50),
+                new CircuitBreaker(0.5, 20, 10_000, 30_000),
+                queueMetrics, 100));
+    }
+
+    private static String sentence(final Random random, final int words) {
+        final StringBuilder out = new StringBuilder(words * 8);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                out.append(' ');
+            }
+            out.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return out.toString();
+    }
+
+    private static String paragraphs(final Random random, final int bytes) {
+        final StringBuilder out = new StringBuilder(bytes + 64);
+        while (out.length() < bytes) {
+            out.append("<p>").append(sentence(random, 20 + random.nextInt(40))).append(" ")
+                    .append(Long.toHexString(random.nextLong())).append("</p>\n");
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package com.dotcms.plugin.sqs.bench;
+
+import com.dotcms.plugin.sqs.SqsClientRegistry;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+/**
+ * One send with a client built (and closed) for the call, as the actionlet originally did, against
+ * one send with the pooled client of {@link SqsClientRegistry}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientBenchmark {
+
+    private FakeSqsServer server;
+    private SqsClientRegistry registry;
+    private SendMessageRequest request;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new FakeSqsServer(4).start();
+        registry = new SqsClientRegistry(4, 50, Duration.ofSeconds(60), Duration.ofHours(1), Duration.ofSeconds(1));
+        request = SendMessageRequest.builder()
+                .queueUrl(server.queueUrl("client-benchmark"))
+                .messageBody("{\"identifier\":\"benchmark\"}")
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        registry.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public SendMessageResponse newClientPerSend() {
+        try (SqsClient client = SqsClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(BenchmarkFixtures.ACCESS_KEY, BenchmarkFixtures.SECRET_KEY)))
+                .endpointOverride(URI.create(server.getEndpoint()))
+                // Several HTTP implementations come with the plugin, the SDK will not pick one by itself
+                .httpClientBuilder(ApacheHttpClient.builder())
+                .build()) {
+            return client.sendMessage(request);
+        }
+    }
+
+    @Benchmark
+    public SendMessageResponse pooledClient() {
+        return registry.getClient(Region.US_EAST_1, BenchmarkFixtures.ACCESS_KEY, BenchmarkFixtures.SECRET_KEY,
+                server.getEndpoint()).sendMessage(request);
+    }
+}
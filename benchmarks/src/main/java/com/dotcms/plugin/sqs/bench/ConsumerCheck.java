@@ -0,0 +1,134 @@
+package com.dotcms.plugin.sqs.bench;
+
+import com.dotcms.plugin.sqs.SqsClientRegistry;
+import com.dotcms.plugin.sqs.SqsMessageHandler;
+import com.dotcms.plugin.sqs.SqsQueueConsumer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+
+/**
+ * Runs {@link SqsQueueConsumer} against {@link FakeSqsServer} and checks that every message is
+ * handled and deleted, that a handler failure leads to a redelivery after the visibility timeout,
+ * and that the message attributes arrive. Exits with status 1 when a check fails.
+ * <pre>
+ * java -cp target/benchmarks.jar com.dotcms.plugin.sqs.bench.ConsumerCheck --messages=500 --fail-every=7
+ * </pre>
+ */
+public final class ConsumerCheck {
+
+    private static final Region REGION = Region.US_EAST_1;
+
+    private ConsumerCheck() {}
+
+    public static void main(final String[] args) throws Exception {
+        int messages = 500;
+        int failEvery = 7;
+        int workers = 8;
+        for (String arg : args) {
+            if (arg.startsWith("--messages=")) {
+                messages = Integer.parseInt(arg.substring("--messages=".length()));
+            } else if (arg.startsWith("--fail-every=")) {
+                failEvery = Integer.parseInt(arg.substring("--fail-every=".length()));
+            } else if (arg.startsWith("--workers=")) {
+                workers = Integer.parseInt(arg.substring("--workers=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        final List<String> failures = new ArrayList<>();
+        final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        final LongAdder handled = new LongAdder();
+        final LongAdder missingAttributes = new LongAdder();
+        final int failingEvery = failEvery;
+        // Every n-th message fails on its first delivery
+        final SqsMessageHandler handler = message -> {
+            final int attempt = attempts.computeIfAbsent(message.body(), body -> new AtomicInteger()).incrementAndGet();
+            if (!message.messageAttributes().containsKey("seq")) {
+                missingAttributes.increment();
+            }
+            if (failingEvery > 0 && Integer.parseInt(message.body()) % failingEvery == 0 && attempt == 1) {
+                throw new IllegalStateException("Failing first delivery of message " + message.body());
+            }
+            handled.increment();
+        };
+
+        try (FakeSqsServer server = new FakeSqsServer(workers + 4).retainMessages(true).start()) {
+            final SqsClientRegistry registry = new SqsClientRegistry(4, workers + 4, Duration.ofSeconds(60),
+                    Duration.ofHours(1), Duration.ofSeconds(1));
+            try {
+                final SqsClient client = registry.getClient(REGION, BenchmarkFixtures.ACCESS_KEY,
+                        BenchmarkFixtures.SECRET_KEY, server.getEndpoint());
+                final String queueUrl = server.queueUrl("consumer-check");
+                send(client, queueUrl, messages);
+                System.out.println("Sent " + messages + " messages to " + queueUrl);
+
+                // The shortest visibility timeout the consumer allows, so failed messages come back quickly
+                final SqsQueueConsumer consumer = new SqsQueueConsumer(queueUrl, () -> client, handler, workers, 1, 2,
+                        Duration.ofMinutes(5), Duration.ofMillis(50));
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+                while (server.getQueueDepth(queueUrl) > 0 && System.nanoTime() < deadline) {
+                    Thread.sleep(100);
+                }
+                consumer.shutdown(Duration.ofSeconds(10));
+                System.out.println("Consumer status: " + consumer.getStatus());
+
+                final int expectedFailures = failEvery > 0 ? messages / failEvery : 0;
+                check(failures, server.getQueueDepth(queueUrl) == 0,
+                        server.getQueueDepth(queueUrl) + " messages left in the queue");
+                check(failures, handled.sum() == messages, "handled " + handled.sum() + " of " + messages + " messages");
+                check(failures, attempts.size() == messages, "received " + attempts.size() + " distinct messages of " + messages);
+                check(failures, server.getDeleted() == messages, "deleted " + server.getDeleted() + " of " + messages + " messages");
+                final long redelivered = attempts.values().stream().filter(count -> count.get() > 1).count();
+                check(failures, redelivered == expectedFailures,
+                        redelivered + " messages were redelivered, expected " + expectedFailures);
+                check(failures, missingAttributes.sum() == 0, missingAttributes.sum() + " messages arrived without attributes");
+            } finally {
+                registry.shutdown();
+            }
+        }
+
+        if (failures.isEmpty()) {
+            System.out.println("Consumer check passed");
+            return;
+        }
+        failures.forEach(failure -> System.out.println("FAILED: " + failure));
+        System.exit(1);
+    }
+
+    private static void send(final SqsClient client, final String queueUrl, final int messages) {
+        for (int from = 0; from < messages; from += 10) {
+            final List<SendMessageBatchRequestEntry> entries = new ArrayList<>(10);
+            for (int i = from; i < Math.min(messages, from + 10); i++) {
+                entries.add(SendMessageBatchRequestEntry.builder()
+                        .id(String.valueOf(i - from))
+                        .messageBody(String.valueOf(i))
+                        .messageAttributes(Map.of("seq", MessageAttributeValue.builder()
+                                .dataType("Number")
+                                .stringValue(String.valueOf(i))
+                                .build()))
+                        .build());
+            }
+            client.sendMessageBatch(SendMessageBatchRequest.builder().queueUrl(queueUrl).entries(entries).build());
+        }
+    }
+
+    private static void check(final List<String> failures, final boolean passed, final String message) {
+        if (!passed) {
+            failures.add(message);
+        }
+    }
+}
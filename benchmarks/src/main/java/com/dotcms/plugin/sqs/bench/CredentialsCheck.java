@@ -0,0 +1,144 @@
+package com.dotcms.plugin.sqs.bench;
+
+import com.dotcms.plugin.sqs.AppConfig;
+import com.dotcms.plugin.sqs.SqsClientRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+/**
+ * Runs the assume-role, web-identity and default credential modes against {@link FakeStsServer}
+ * and {@link FakeSqsServer}. For each mode it checks that the session is fetched once, when the
+ * registry builds the client, that the sends after it do not call STS again, and that they are
+ * signed with the session's access key. Exits with status 1 when a check fails.
+ * <pre>
+ * java -cp target/benchmarks.jar com.dotcms.plugin.sqs.bench.CredentialsCheck --messages=50
+ * </pre>
+ */
+public final class CredentialsCheck {
+
+    private static final Region REGION = Region.US_EAST_1;
+    private static final String ROLE_ARN = "arn:aws:iam::000000000000:role/dotsqs-check";
+    private static final String WEB_IDENTITY_TOKEN = "fake-web-identity-token";
+
+    private CredentialsCheck() {}
+
+    public static void main(final String[] args) throws Exception {
+        int messages = 50;
+        for (String arg : args) {
+            if (arg.startsWith("--messages=")) {
+                messages = Integer.parseInt(arg.substring("--messages=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        final List<String> failures = new ArrayList<>();
+        final Path tokenFile = Files.createTempFile("dotsqs-web-identity", ".token");
+        Files.write(tokenFile, WEB_IDENTITY_TOKEN.getBytes(StandardCharsets.UTF_8));
+        // Read by the SDK like AWS_WEB_IDENTITY_TOKEN_FILE and AWS_ROLE_ARN
+        System.setProperty("aws.webIdentityTokenFile", tokenFile.toString());
+        System.setProperty("aws.roleArn", ROLE_ARN);
+
+        try (FakeSqsServer sqs = new FakeSqsServer(4).start();
+             FakeStsServer sts = new FakeStsServer().start()) {
+            final SqsClientRegistry registry = new SqsClientRegistry(8, 4, Duration.ofSeconds(60),
+                    Duration.ofHours(1), Duration.ofSeconds(1));
+            try {
+                final AppConfig assumeRole = AppConfig.builder()
+                        .hostId("assume-role-site")
+                        .credentialMode("assume-role")
+                        .awsAccessKey(BenchmarkFixtures.ACCESS_KEY)
+                        .awsSecretKey(BenchmarkFixtures.SECRET_KEY)
+                        .roleArn(ROLE_ARN)
+                        .externalId("dotsqs-check")
+                        .stsEndpoint(sts.getEndpoint())
+                        .build();
+                check(failures, "assume-role", registry, assumeRole, sqs, sts, "AssumeRole", messages);
+                check(failures, sts.isLastSigned(), "assume-role: the AssumeRole call was not signed with the App keys");
+                check(failures, "dotsqs-check".equals(sts.getLastExternalId()),
+                        "assume-role: external id " + sts.getLastExternalId() + " was sent");
+
+                final AppConfig webIdentity = AppConfig.builder()
+                        .hostId("web-identity-site")
+                        .credentialMode("web-identity")
+                        .stsEndpoint(sts.getEndpoint())
+                        .build();
+                check(failures, "web-identity", registry, webIdentity, sqs, sts, "AssumeRoleWithWebIdentity", messages);
+                check(failures, !sts.isLastSigned(), "web-identity: the AssumeRoleWithWebIdentity call was signed");
+                check(failures, WEB_IDENTITY_TOKEN.equals(sts.getLastWebIdentityToken()),
+                        "web-identity: token " + sts.getLastWebIdentityToken() + " was sent");
+
+                // Keys in the environment come first in the default chain and would skip web identity
+                if (System.getenv("AWS_ACCESS_KEY_ID") != null) {
+                    System.out.println("Skipping the default chain check, AWS_ACCESS_KEY_ID is set");
+                } else {
+                    final AppConfig defaultChain = AppConfig.builder()
+                            .hostId("default-site")
+                            .credentialMode("default")
+                            .stsEndpoint(sts.getEndpoint())
+                            .build();
+                    check(failures, "default", registry, defaultChain, sqs, sts, "AssumeRoleWithWebIdentity", messages);
+                }
+            } finally {
+                registry.shutdown();
+            }
+        } finally {
+            Files.deleteIfExists(tokenFile);
+        }
+
+        if (failures.isEmpty()) {
+            System.out.println("Credentials check passed");
+            return;
+        }
+        failures.forEach(failure -> System.out.println("FAILED: " + failure));
+        System.exit(1);
+    }
+
+    private static void check(final List<String> failures, final String mode, final SqsClientRegistry registry,
+                    final AppConfig appConfig, final FakeSqsServer sqs, final FakeStsServer sts, final String action,
+                    final int messages) {
+        final long before = sts.getCalls(action);
+        final SqsClient client;
+        try {
+            client = registry.getClient(REGION, appConfig, sqs.getEndpoint());
+        } catch (Exception e) {
+            failures.add(mode + ": building the client failed: " + e);
+            return;
+        }
+        check(failures, sts.getCalls(action) == before + 1,
+                mode + ": " + (sts.getCalls(action) - before) + " " + action + " calls while building the client, expected 1");
+
+        final long afterBuild = sts.getCalls(action);
+        try {
+            for (int i = 0; i < messages; i++) {
+                client.sendMessage(SendMessageRequest.builder()
+                        .queueUrl(sqs.queueUrl("credentials-check"))
+                        .messageBody(mode + "-" + i)
+                        .build());
+            }
+        } catch (Exception e) {
+            failures.add(mode + ": sending failed: " + e);
+            return;
+        }
+        check(failures, sts.getCalls(action) == afterBuild,
+                mode + ": " + (sts.getCalls(action) - afterBuild) + " " + action + " calls while sending, expected none");
+        check(failures, sqs.getAccessKeys().contains(sts.getLastAccessKey()),
+                mode + ": no send was signed with the session key " + sts.getLastAccessKey());
+        System.out.println(mode + ": " + messages + " messages sent with session " + sts.getLastAccessKey());
+    }
+
+    private static void check(final List<String> failures, final boolean passed, final String message) {
+        if (!passed) {
+            failures.add(message);
+        }
+    }
+}
@@ -0,0 +1,506 @@
+package com.dotcms.plugin.sqs.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for the SQS query API, so the send path can be exercised offline through
+ * {@code endpointOverride}. Understands {@code SendMessage} and {@code SendMessageBatch}, answers with
+ * the MD5 digests the SDK validates, and can inject latency, throttling and server errors.
+ * <p>
+ * With {@link #retainMessages(boolean)} the sent messages are kept per queue URL and can be consumed
+ * with {@code ReceiveMessage}, {@code DeleteMessageBatch} and {@code ChangeMessageVisibilityBatch},
+ * including visibility timeouts and long polling.
+ */
+public class FakeSqsServer implements AutoCloseable {
+
+    private static final String NAMESPACE = "http://queue.amazonaws.com/doc/2012-11-05/";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private volatile long latencyMicros;
+    private volatile long latencyJitterMicros;
+    private volatile double throttleRatio;
+    private volatile double errorRatio;
+    private volatile boolean retainMessages;
+
+    private final Map<String, List<StoredMessage>> queues = new ConcurrentHashMap<>();
+    private final Set<String> accessKeys = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder deleted = new LongAdder();
+
+    public FakeSqsServer(final int threads) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "fake-sqs-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public FakeSqsServer start() {
+        server.start();
+        return this;
+    }
+
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String queueUrl(final String queueName) {
+        return getEndpoint() + "/000000000000/" + queueName;
+    }
+
+    /**
+     * @param latency fixed delay added to every response
+     * @param jitter  random extra delay between 0 and this value
+     * @param unit    the unit of both values
+     */
+    public FakeSqsServer latency(final long latency, final long jitter, final TimeUnit unit) {
+        this.latencyMicros = unit.toMicros(latency);
+        this.latencyJitterMicros = unit.toMicros(jitter);
+        return this;
+    }
+
+    /**
+     * @param ratio share of requests answered with a {@code RequestThrottled} error, between 0 and 1
+     */
+    public FakeSqsServer throttleRatio(final double ratio) {
+        this.throttleRatio = ratio;
+        return this;
+    }
+
+    /**
+     * @param ratio share of requests answered with an {@code InternalError}, between 0 and 1
+     */
+    public FakeSqsServer errorRatio(final double ratio) {
+        this.errorRatio = ratio;
+        return this;
+    }
+
+    /**
+     * @param retain whether sent messages are kept for receiving; off for load tests, which would
+     *               otherwise fill the heap
+     */
+    public FakeSqsServer retainMessages(final boolean retain) {
+        this.retainMessages = retain;
+        return this;
+    }
+
+    /**
+     * @return the messages of the queue that have not been deleted, visible or not
+     */
+    public int getQueueDepth(final String queueUrl) {
+        final List<StoredMessage> queue = queues.get(queueUrl);
+        if (queue == null) {
+            return 0;
+        }
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    public long getDeleted() {
+        return deleted.sum();
+    }
+
+    /**
+     * @return the access key ids the requests were signed with
+     */
+    public Set<String> getAccessKeys() {
+        return accessKeys;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getMessages() {
+        return messages.sum();
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public void resetCounters() {
+        requests.reset();
+        messages.reset();
+        throttled.reset();
+        errors.reset();
+        deleted.reset();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            requests.increment();
+            final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            final int credential = authorization != null ? authorization.indexOf("Credential=") : -1;
+            if (credential >= 0) {
+                final int end = authorization.indexOf('/', credential);
+                accessKeys.add(authorization.substring(credential + "Credential=".length(), end < 0 ? authorization.length() : end));
+            }
+            final Map<String, String> params = parseForm(readBody(exchange.getRequestBody()));
+            delay();
+
+            final double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < throttleRatio) {
+                throttled.increment();
+                respond(exchange, 400, error("Sender", "RequestThrottled", "Request is throttled."));
+                return;
+            }
+            if (roll < throttleRatio + errorRatio) {
+                errors.increment();
+                respond(exchange, 500, error("Receiver", "InternalError", "We encountered an internal error."));
+                return;
+            }
+
+            final String action = params.getOrDefault("Action", "");
+            if ("SendMessage".equals(action)) {
+                respond(exchange, 200, sendMessage(params));
+            } else if ("SendMessageBatch".equals(action)) {
+                respond(exchange, 200, sendMessageBatch(params));
+            } else if ("ReceiveMessage".equals(action)) {
+                respond(exchange, 200, receiveMessage(params));
+            } else if ("DeleteMessageBatch".equals(action)) {
+                respond(exchange, 200, deleteMessageBatch(params));
+            } else if ("ChangeMessageVisibilityBatch".equals(action)) {
+                respond(exchange, 200, changeMessageVisibilityBatch(params));
+            } else {
+                respond(exchange, 400, error("Sender", "InvalidAction", "Unsupported action: " + action));
+            }
+        } catch (Exception e) {
+            respond(exchange, 500, error("Receiver", "InternalError", String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String sendMessage(final Map<String, String> params) {
+        messages.increment();
+        final StringBuilder xml = new StringBuilder(512);
+        xml.append("<SendMessageResponse xmlns=\"").append(NAMESPACE).append("\"><SendMessageResult>");
+        appendResult(xml, params, "", store(params, ""));
+        xml.append("</SendMessageResult>");
+        appendMetadata(xml);
+        return xml.append("</SendMessageResponse>").toString();
+    }
+
+    private String sendMessageBatch(final Map<String, String> params) {
+        final StringBuilder xml = new StringBuilder(2048);
+        xml.append("<SendMessageBatchResponse xmlns=\"").append(NAMESPACE).append("\"><SendMessageBatchResult>");
+        for (int i = 1; params.containsKey("SendMessageBatchRequestEntry." + i + ".Id"); i++) {
+            final String prefix = "SendMessageBatchRequestEntry." + i + ".";
+            messages.increment();
+            xml.append("<SendMessageBatchResultEntry><Id>").append(params.get(prefix + "Id")).append("</Id>");
+            appendResult(xml, params, prefix, store(params, prefix));
+            xml.append("</SendMessageBatchResultEntry>");
+        }
+        xml.append("</SendMessageBatchResult>");
+        appendMetadata(xml);
+        return xml.append("</SendMessageBatchResponse>").toString();
+    }
+
+    /**
+     * Keeps a sent message for receiving if retention is on.
+     *
+     * @return the id of the message
+     */
+    private String store(final Map<String, String> params, final String prefix) {
+        final String messageId = UUID.randomUUID().toString();
+        if (retainMessages) {
+            final List<StoredMessage> queue = queues.computeIfAbsent(params.getOrDefault("QueueUrl", ""), url -> new ArrayList<>());
+            synchronized (queue) {
+                queue.add(new StoredMessage(messageId, params.getOrDefault(prefix + "MessageBody", ""),
+                        attributesOf(params, prefix)));
+            }
+        }
+        return messageId;
+    }
+
+    private String receiveMessage(final Map<String, String> params) throws InterruptedException {
+        final int max = Integer.parseInt(params.getOrDefault("MaxNumberOfMessages", "1"));
+        final int visibilitySeconds = Integer.parseInt(params.getOrDefault("VisibilityTimeout", "30"));
+        final long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(Integer.parseInt(params.getOrDefault("WaitTimeSeconds", "0")));
+        final List<StoredMessage> queue = queues.computeIfAbsent(params.getOrDefault("QueueUrl", ""), url -> new ArrayList<>());
+
+        final List<StoredMessage> received = new ArrayList<>(max);
+        while (true) {
+            final long now = System.nanoTime();
+            synchronized (queue) {
+                for (StoredMessage message : queue) {
+                    if (received.size() >= max) {
+                        break;
+                    }
+                    if (message.visibleAt <= now) {
+                        message.visibleAt = now + TimeUnit.SECONDS.toNanos(visibilitySeconds);
+                        message.receiveCount++;
+                        message.receiptHandle = UUID.randomUUID().toString();
+                        received.add(message);
+                    }
+                }
+            }
+            // Long polling: answer as soon as something is visible, or when the wait time is up
+            if (!received.isEmpty() || now >= waitUntil) {
+                break;
+            }
+            Thread.sleep(20);
+        }
+
+        final StringBuilder xml = new StringBuilder(1024);
+        xml.append("<ReceiveMessageResponse xmlns=\"").append(NAMESPACE).append("\"><ReceiveMessageResult>");
+        for (StoredMessage message : received) {
+            xml.append("<Message><MessageId>").append(message.messageId).append("</MessageId>");
+            xml.append("<ReceiptHandle>").append(message.receiptHandle).append("</ReceiptHandle>");
+            xml.append("<MD5OfBody>").append(md5(message.body.getBytes(StandardCharsets.UTF_8))).append("</MD5OfBody>");
+            xml.append("<Body>").append(escapeXml(message.body)).append("</Body>");
+            xml.append("<Attribute><Name>ApproximateReceiveCount</Name><Value>").append(message.receiveCount).append("</Value></Attribute>");
+            if (!message.attributes.isEmpty()) {
+                xml.append("<MD5OfMessageAttributes>").append(attributesMd5(message.attributes)).append("</MD5OfMessageAttributes>");
+                for (Map.Entry<String, String[]> attribute : message.attributes.entrySet()) {
+                    final String[] value = attribute.getValue();
+                    xml.append("<MessageAttribute><Name>").append(escapeXml(attribute.getKey())).append("</Name><Value>");
+                    if (value[1] != null) {
+                        xml.append("<StringValue>").append(escapeXml(value[1])).append("</StringValue>");
+                    } else {
+                        xml.append("<BinaryValue>").append(value[2] != null ? value[2] : "").append("</BinaryValue>");
+                    }
+                    xml.append("<DataType>").append(escapeXml(value[0])).append("</DataType></Value></MessageAttribute>");
+                }
+            }
+            xml.append("</Message>");
+        }
+        xml.append("</ReceiveMessageResult>");
+        appendMetadata(xml);
+        return xml.append("</ReceiveMessageResponse>").toString();
+    }
+
+    private String deleteMessageBatch(final Map<String, String> params) {
+        final List<StoredMessage> queue = queues.computeIfAbsent(params.getOrDefault("QueueUrl", ""), url -> new ArrayList<>());
+        final StringBuilder xml = new StringBuilder(512);
+        xml.append("<DeleteMessageBatchResponse xmlns=\"").append(NAMESPACE).append("\"><DeleteMessageBatchResult>");
+        for (int i = 1; params.containsKey("DeleteMessageBatchRequestEntry." + i + ".Id"); i++) {
+            final String prefix = "DeleteMessageBatchRequestEntry." + i + ".";
+            final String receiptHandle = params.get(prefix + "ReceiptHandle");
+            synchronized (queue) {
+                // Like SQS, deleting with an outdated receipt handle succeeds without removing anything
+                if (queue.removeIf(message -> receiptHandle.equals(message.receiptHandle))) {
+                    deleted.increment();
+                }
+            }
+            xml.append("<DeleteMessageBatchResultEntry><Id>").append(params.get(prefix + "Id")).append("</Id></DeleteMessageBatchResultEntry>");
+        }
+        xml.append("</DeleteMessageBatchResult>");
+        appendMetadata(xml);
+        return xml.append("</DeleteMessageBatchResponse>").toString();
+    }
+
+    private String changeMessageVisibilityBatch(final Map<String, String> params) {
+        final List<StoredMessage> queue = queues.computeIfAbsent(params.getOrDefault("QueueUrl", ""), url -> new ArrayList<>());
+        final StringBuilder xml = new StringBuilder(512);
+        xml.append("<ChangeMessageVisibilityBatchResponse xmlns=\"").append(NAMESPACE).append("\"><ChangeMessageVisibilityBatchResult>");
+        for (int i = 1; params.containsKey("ChangeMessageVisibilityBatchRequestEntry." + i + ".Id"); i++) {
+            final String prefix = "ChangeMessageVisibilityBatchRequestEntry." + i + ".";
+            final String receiptHandle = params.get(prefix + "ReceiptHandle");
+            final long visibleAt = System.nanoTime()
+                    + TimeUnit.SECONDS.toNanos(Integer.parseInt(params.getOrDefault(prefix + "VisibilityTimeout", "0")));
+            synchronized (queue) {
+                for (StoredMessage message : queue) {
+                    if (receiptHandle.equals(message.receiptHandle)) {
+                        message.visibleAt = visibleAt;
+                    }
+                }
+            }
+            xml.append("<ChangeMessageVisibilityBatchResultEntry><Id>").append(params.get(prefix + "Id"))
+                    .append("</Id></ChangeMessageVisibilityBatchResultEntry>");
+        }
+        xml.append("</ChangeMessageVisibilityBatchResult>");
+        appendMetadata(xml);
+        return xml.append("</ChangeMessageVisibilityBatchResponse>").toString();
+    }
+
+    private static void appendResult(final StringBuilder xml, final Map<String, String> params, final String prefix,
+                                     final String messageId) {
+        final String body = params.getOrDefault(prefix + "MessageBody", "");
+        xml.append("<MessageId>").append(messageId).append("</MessageId>");
+        xml.append("<MD5OfMessageBody>").append(md5(body.getBytes(StandardCharsets.UTF_8))).append("</MD5OfMessageBody>");
+        final Map<String, String[]> attributes = attributesOf(params, prefix);
+        final String attributesMd5 = attributes.isEmpty() ? null : attributesMd5(attributes);
+        if (attributesMd5 != null) {
+            xml.append("<MD5OfMessageAttributes>").append(attributesMd5).append("</MD5OfMessageAttributes>");
+        }
+        if (params.containsKey(prefix + "MessageGroupId")) {
+            xml.append("<SequenceNumber>").append(System.nanoTime()).append("</SequenceNumber>");
+        }
+    }
+
+    private static void appendMetadata(final StringBuilder xml) {
+        xml.append("<ResponseMetadata><RequestId>").append(UUID.randomUUID()).append("</RequestId></ResponseMetadata>");
+    }
+
+    private static String error(final String type, final String code, final String message) {
+        return "<ErrorResponse xmlns=\"" + NAMESPACE + "\"><Error><Type>" + type + "</Type><Code>" + code
+                + "</Code><Message>" + message + "</Message><Detail/></Error><RequestId>" + UUID.randomUUID()
+                + "</RequestId></ErrorResponse>";
+    }
+
+    /**
+     * The message attributes of a request, sorted by name: data type, string value and base64 binary value.
+     */
+    private static Map<String, String[]> attributesOf(final Map<String, String> params, final String prefix) {
+        final Map<String, String[]> attributes = new TreeMap<>();
+        for (int i = 1; params.containsKey(prefix + "MessageAttribute." + i + ".Name"); i++) {
+            final String attribute = prefix + "MessageAttribute." + i + ".";
+            attributes.put(params.get(attribute + "Name"), new String[] {
+                    params.get(attribute + "Value.DataType"),
+                    params.get(attribute + "Value.StringValue"),
+                    params.get(attribute + "Value.BinaryValue")});
+        }
+        return attributes;
+    }
+
+    /**
+     * Digest of the message attributes as documented for SQS: attributes sorted by name, each one
+     * encoded as length-prefixed name, length-prefixed data type, a transport type byte and the
+     * length-prefixed value.
+     */
+    private static String attributesMd5(final Map<String, String[]> attributes) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Map.Entry<String, String[]> attribute : attributes.entrySet()) {
+            final String[] value = attribute.getValue();
+            writeLengthPrefixed(out, attribute.getKey().getBytes(StandardCharsets.UTF_8));
+            writeLengthPrefixed(out, value[0].getBytes(StandardCharsets.UTF_8));
+            if (value[1] != null) {
+                out.write(1);
+                writeLengthPrefixed(out, value[1].getBytes(StandardCharsets.UTF_8));
+            } else {
+                out.write(2);
+                writeLengthPrefixed(out, Base64.getDecoder().decode(value[2] != null ? value[2] : ""));
+            }
+        }
+        return md5(out.toByteArray());
+    }
+
+    private static void writeLengthPrefixed(final ByteArrayOutputStream out, final byte[] bytes) {
+        out.writeBytes(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        out.writeBytes(bytes);
+    }
+
+    private static String escapeXml(final String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String md5(final byte[] bytes) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(bytes);
+            final StringBuilder hex = new StringBuilder(32);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void delay() {
+        long micros = latencyMicros;
+        if (latencyJitterMicros > 0) {
+            micros += ThreadLocalRandom.current().nextLong(latencyJitterMicros);
+        }
+        if (micros > 0) {
+            try {
+                TimeUnit.MICROSECONDS.sleep(micros);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String readBody(final InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseForm(final String body) {
+        final Map<String, String> params = new HashMap<>();
+        for (String pair : body.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            final int eq = pair.indexOf('=');
+            final String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            final String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String xml) throws IOException {
+        final byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/xml");
+        exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static final class StoredMessage {
+        final String messageId;
+        final String body;
+        final Map<String, String[]> attributes;
+        int receiveCount;
+        long visibleAt = System.nanoTime();
+        String receiptHandle;
+
+        StoredMessage(final String messageId, final String body, final Map<String, String[]> attributes) {
+            this.messageId = messageId;
+            this.body = body;
+            this.attributes = attributes;
+        }
+    }
+}
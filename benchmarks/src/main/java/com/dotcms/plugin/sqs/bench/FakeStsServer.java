@@ -0,0 +1,165 @@
+package com.dotcms.plugin.sqs.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process stand-in for the STS query API, used through the App's STS endpoint. Answers
+ * {@code AssumeRole} and {@code AssumeRoleWithWebIdentity} with new session credentials that expire
+ * after the requested duration, and records the calls so a check can count them.
+ */
+public class FakeStsServer implements AutoCloseable {
+
+    private static final String NAMESPACE = "https://sts.amazonaws.com/doc/2011-06-15/";
+
+    /** Prefix of the access key ids this server issues. */
+    public static final String ACCESS_KEY_PREFIX = "ASIAFAKESTS";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+
+    private volatile String lastRoleArn;
+    private volatile String lastExternalId;
+    private volatile String lastWebIdentityToken;
+    private volatile boolean lastSigned;
+    private volatile String lastAccessKey;
+
+    public FakeStsServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        this.executor = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "fake-sts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public FakeStsServer start() {
+        server.start();
+        return this;
+    }
+
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @param action {@code AssumeRole} or {@code AssumeRoleWithWebIdentity}
+     * @return how often the action was called
+     */
+    public long getCalls(final String action) {
+        final LongAdder count = calls.get(action);
+        return count != null ? count.sum() : 0;
+    }
+
+    public String getLastRoleArn() {
+        return lastRoleArn;
+    }
+
+    public String getLastExternalId() {
+        return lastExternalId;
+    }
+
+    public String getLastWebIdentityToken() {
+        return lastWebIdentityToken;
+    }
+
+    /**
+     * @return whether the last call carried a SigV4 signature
+     */
+    public boolean isLastSigned() {
+        return lastSigned;
+    }
+
+    /**
+     * @return the access key id of the last session issued
+     */
+    public String getLastAccessKey() {
+        return lastAccessKey;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final Map<String, String> params = parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            final String action = params.getOrDefault("Action", "");
+            if (!"AssumeRole".equals(action) && !"AssumeRoleWithWebIdentity".equals(action)) {
+                respond(exchange, 400, "<ErrorResponse xmlns=\"" + NAMESPACE + "\"><Error><Type>Sender</Type>"
+                        + "<Code>InvalidAction</Code><Message>Unsupported action: " + action + "</Message></Error>"
+                        + "<RequestId>" + UUID.randomUUID() + "</RequestId></ErrorResponse>");
+                return;
+            }
+            calls.computeIfAbsent(action, a -> new LongAdder()).increment();
+            lastRoleArn = params.get("RoleArn");
+            lastExternalId = params.get("ExternalId");
+            lastWebIdentityToken = params.get("WebIdentityToken");
+            lastSigned = exchange.getRequestHeaders().getFirst("Authorization") != null;
+
+            final int duration = Integer.parseInt(params.getOrDefault("DurationSeconds", "3600"));
+            final String accessKey = ACCESS_KEY_PREFIX + sessions.incrementAndGet();
+            lastAccessKey = accessKey;
+            respond(exchange, 200, "<" + action + "Response xmlns=\"" + NAMESPACE + "\">"
+                    + "<" + action + "Result>"
+                    + "<Credentials>"
+                    + "<AccessKeyId>" + accessKey + "</AccessKeyId>"
+                    + "<SecretAccessKey>fake-session-secret</SecretAccessKey>"
+                    + "<SessionToken>fake-session-token-" + UUID.randomUUID() + "</SessionToken>"
+                    + "<Expiration>" + Instant.now().plusSeconds(duration).truncatedTo(ChronoUnit.SECONDS) + "</Expiration>"
+                    + "</Credentials>"
+                    + "<AssumedRoleUser><AssumedRoleId>AROAFAKE:" + params.get("RoleSessionName") + "</AssumedRoleId>"
+                    + "<Arn>" + params.get("RoleArn") + "</Arn></AssumedRoleUser>"
+                    + "</" + action + "Result>"
+                    + "<ResponseMetadata><RequestId>" + UUID.randomUUID() + "</RequestId></ResponseMetadata>"
+                    + "</" + action + "Response>");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Map<String, String> parseForm(final String body) {
+        final Map<String, String> params = new HashMap<>();
+        for (String pair : body.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            final int eq = pair.indexOf('=');
+            final String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            final String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String xml) throws IOException {
+        final byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.dotcms.plugin.sqs.bench;
+
+import com.dotcms.plugin.sqs.LatencyHistogram;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays bulk workflow traffic against the send path and reports where it saturates. Each send
+ * mode is run at increasing numbers of workflow threads, every thread executing the actionlet's send
+ * path back to back for a fixed time, against {@link FakeSqsServer} with the configured latency,
+ * throttling and errors. For each step the report has the executions per second, the messages SQS
+ * received per second, the latency percentiles of the workflow thread, the JVM threads, heap and GC
+ * time, and what was still queued at the end. The knee is the last step after which more threads no
+ * longer add at least {@code --knee-gain} throughput, i.e. where workflow threads start to back up.
+ * <p>
+ * Run it from the shaded jar:
+ * <pre>
+ * java -cp target/benchmarks.jar com.dotcms.plugin.sqs.bench.LoadGenerator --modes=sync,batch --latency-ms=20
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private static final int FIXTURES_PER_SIZE = 256;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private LoadGenerator() {}
+
+    public static void main(final String[] args) throws Exception {
+        final Options options = Options.parse(args);
+        System.out.println("Load test: " + options);
+
+        final Map<String, List<StepResult>> series = new LinkedHashMap<>();
+        try (FakeSqsServer server = new FakeSqsServer(options.serverThreads)) {
+            server.latency(options.latencyMillis, options.jitterMillis, TimeUnit.MILLISECONDS)
+                    .throttleRatio(options.throttleRatio)
+                    .errorRatio(options.errorRatio)
+                    .start();
+            for (int payloadBytes : options.payloadBytes) {
+                final List<Map<String, Object>> fixtures = new ArrayList<>(FIXTURES_PER_SIZE);
+                for (int i = 0; i < FIXTURES_PER_SIZE; i++) {
+                    fixtures.add(BenchmarkFixtures.contentlet(payloadBytes, i));
+                }
+                for (ActionletSendPath.Mode mode : options.modes) {
+                    final List<StepResult> steps = new ArrayList<>();
+                    try (ActionletSendPath path = new ActionletSendPath(mode, server, options.maxConnections, options.fsync)) {
+                        for (int threads : options.threads) {
+                            if (options.warmup.toMillis() > 0) {
+                                runStep(path, server, fixtures, threads, payloadBytes, options.warmup, options.drainTimeout);
+                            }
+                            final StepResult step = runStep(path, server, fixtures, threads, payloadBytes,
+                                    options.duration, options.drainTimeout);
+                            steps.add(step);
+                            System.out.println("  " + mode.name().toLowerCase(Locale.ROOT) + " " + payloadBytes + "B "
+                                    + threads + " threads: " + String.format(Locale.ROOT, "%.0f", step.getThroughput()) + " exec/s");
+                        }
+                    }
+                    series.put(mode.name().toLowerCase(Locale.ROOT) + "|" + payloadBytes, steps);
+                }
+            }
+        }
+
+        printReport(series, options);
+        writeJson(new File(options.out), series, options);
+        System.out.println("Results written to " + options.out);
+    }
+
+    /**
+     * Runs the given number of workflow threads for the given time and waits for the backlog to drain.
+     */
+    static StepResult runStep(final ActionletSendPath path, final FakeSqsServer server,
+                              final List<Map<String, Object>> fixtures, final int threads, final int payloadBytes,
+                              final Duration duration, final Duration drainTimeout) throws InterruptedException {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder failed = new LongAdder();
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        final AtomicLong peakHeap = new AtomicLong();
+        final long gcMillisBefore = gcMillis();
+
+        server.resetCounters();
+        threadBean.resetPeakThreadCount();
+        final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "load-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memoryBean.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 100, TimeUnit.MILLISECONDS);
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ExecutorService workflowThreads = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "load-workflow-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final CountDownLatch done = new CountDownLatch(threads);
+        final long start = System.nanoTime();
+        final long deadline = start + duration.toNanos();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            workflowThreads.execute(() -> {
+                try {
+                    for (int i = offset; System.nanoTime() < deadline; i += threads) {
+                        final long executionStart = System.nanoTime();
+                        try {
+                            path.execute(fixtures.get(i % fixtures.size()));
+                            latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - executionStart));
+                        } catch (Exception e) {
+                            failed.increment();
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        final long elapsedNanos = System.nanoTime() - start;
+        workflowThreads.shutdown();
+
+        final long delivered = server.getMessages();
+        final long backlog = path.getBacklog();
+        final boolean drained = path.awaitDrained(drainTimeout);
+        sampler.shutdownNow();
+
+        final StepResult result = new StepResult();
+        result.threads = threads;
+        result.payloadBytes = payloadBytes;
+        result.seconds = elapsedNanos / 1e9;
+        result.executions = latency.getCount();
+        result.failed = failed.sum();
+        result.delivered = delivered;
+        result.throttled = server.getThrottled();
+        result.serverErrors = server.getErrors();
+        result.latency = latency.toMap();
+        result.peakThreads = threadBean.getPeakThreadCount();
+        result.peakHeapBytes = peakHeap.get();
+        result.gcMillis = gcMillis() - gcMillisBefore;
+        result.backlogAtEnd = backlog;
+        result.drained = drained;
+        return result;
+    }
+
+    /**
+     * The last step whose successor does not add at least {@code minGain} throughput, or the last
+     * step if throughput kept growing.
+     */
+    static int kneeOf(final List<StepResult> steps, final double minGain) {
+        for (int i = 0; i < steps.size() - 1; i++) {
+            if (steps.get(i + 1).getThroughput() < steps.get(i).getThroughput() * (1 + minGain)) {
+                return i;
+            }
+        }
+        return steps.size() - 1;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static void printReport(final Map<String, List<StepResult>> series, final Options options) {
+        for (Map.Entry<String, List<StepResult>> entry : series.entrySet()) {
+            final String[] key = entry.getKey().split("\\|");
+            final List<StepResult> steps = entry.getValue();
+            final int knee = kneeOf(steps, options.kneeGain);
+            System.out.println();
+            System.out.println("mode=" + key[0] + " payload=" + key[1] + "B");
+            System.out.println(String.format(Locale.ROOT, "%8s %10s %12s %9s %9s %9s %9s %9s %8s %8s %8s %8s %10s",
+                    "threads", "exec/s", "delivered/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms",
+                    "failed", "jvm thr", "heap MB", "gc ms", "backlog"));
+            for (int i = 0; i < steps.size(); i++) {
+                final StepResult step = steps.get(i);
+                System.out.println(String.format(Locale.ROOT, "%8d %10.0f %12.0f %9.2f %9.2f %9.2f %9.2f %9.2f %8d %8d %8d %8d %10s%s",
+                        step.threads, step.getThroughput(), step.getDeliveryRate(),
+                        step.millis("p50"), step.millis("p90"), step.millis("p99"), step.millis("p999"), step.millis("max"),
+                        step.failed, step.peakThreads, step.peakHeapBytes / (1024 * 1024), step.gcMillis,
+                        step.backlogAtEnd + (step.drained ? "" : "!"),
+                        i == knee ? (knee == steps.size() - 1 ? "  <- not saturated" : "  <- knee") : ""));
+            }
+        }
+
+        System.out.println();
+        System.out.println("Comparison at the knee:");
+        System.out.println(String.format(Locale.ROOT, "%-8s %10s %8s %10s %12s %9s %12s",
+                "mode", "payload", "threads", "exec/s", "delivered/s", "p99 ms", "best exec/s"));
+        for (Map.Entry<String, List<StepResult>> entry : series.entrySet()) {
+            final String[] key = entry.getKey().split("\\|");
+            final List<StepResult> steps = entry.getValue();
+            final StepResult knee = steps.get(kneeOf(steps, options.kneeGain));
+            final double best = steps.stream().mapToDouble(StepResult::getThroughput).max().orElse(0);
+            System.out.println(String.format(Locale.ROOT, "%-8s %10s %8d %10.0f %12.0f %9.2f %12.0f",
+                    key[0], key[1] + "B", knee.threads, knee.getThroughput(), knee.getDeliveryRate(), knee.millis("p99"), best));
+        }
+        System.out.println("Backlog is what was still queued when a step ended: messages in async mode, bytes in outbox mode."
+                + " '!' marks steps that did not drain within the drain timeout.");
+    }
+
+    private static void writeJson(final File file, final Map<String, List<StepResult>> series, final Options options)
+                    throws IOException {
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(file, JsonEncoding.UTF8)) {
+            json.useDefaultPrettyPrinter();
+            json.writeStartObject();
+            json.writeStringField("options", options.toString());
+            json.writeArrayFieldStart("series");
+            for (Map.Entry<String, List<StepResult>> entry : series.entrySet()) {
+                final String[] key = entry.getKey().split("\\|");
+                final List<StepResult> steps = entry.getValue();
+                json.writeStartObject();
+                json.writeStringField("mode", key[0]);
+                json.writeNumberField("payloadBytes", Integer.parseInt(key[1]));
+                json.writeNumberField("kneeThreads", steps.get(kneeOf(steps, options.kneeGain)).threads);
+                json.writeBooleanField("saturated", kneeOf(steps, options.kneeGain) < steps.size() - 1);
+                json.writeArrayFieldStart("steps");
+                for (StepResult step : steps) {
+                    step.write(json);
+                }
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * The outcome of one number of workflow threads.
+     */
+    static final class StepResult {
+        int threads;
+        int payloadBytes;
+        double seconds;
+        long executions;
+        long failed;
+        long delivered;
+        long throttled;
+        long serverErrors;
+        Map<String, Object> latency;
+        int peakThreads;
+        long peakHeapBytes;
+        long gcMillis;
+        long backlogAtEnd;
+        boolean drained;
+
+        /** Successful workflow executions per second. */
+        double getThroughput() {
+            return executions / seconds;
+        }
+
+        /** Messages the fake SQS endpoint received per second. */
+        double getDeliveryRate() {
+            return delivered / seconds;
+        }
+
+        double millis(final String percentile) {
+            return ((Number) latency.get(percentile)).doubleValue() / 1000d;
+        }
+
+        void write(final JsonGenerator json) throws IOException {
+            json.writeStartObject();
+            json.writeNumberField("threads", threads);
+            json.writeNumberField("seconds", seconds);
+            json.writeNumberField("executions", executions);
+            json.writeNumberField("executionsPerSecond", getThroughput());
+            json.writeNumberField("failed", failed);
+            json.writeNumberField("delivered", delivered);
+            json.writeNumberField("deliveredPerSecond", getDeliveryRate());
+            json.writeNumberField("throttled", throttled);
+            json.writeNumberField("serverErrors", serverErrors);
+            json.writeObjectFieldStart("latencyMicros");
+            for (Map.Entry<String, Object> value : latency.entrySet()) {
+                json.writeNumberField(value.getKey(), ((Number) value.getValue()).doubleValue());
+            }
+            json.writeEndObject();
+            json.writeNumberField("peakThreads", peakThreads);
+            json.writeNumberField("peakHeapBytes", peakHeapBytes);
+            json.writeNumberField("gcMillis", gcMillis);
+            json.writeNumberField("backlogAtEnd", backlogAtEnd);
+            json.writeBooleanField("drained", drained);
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Command line options, given as {@code --name=value}.
+     */
+    static final class Options {
+        List<ActionletSendPath.Mode> modes = new ArrayList<>(List.of(ActionletSendPath.Mode.values()));
+        List<Integer> threads = new ArrayList<>(List.of(1, 2, 4, 8, 16, 32, 64));
+        List<Integer> payloadBytes = new ArrayList<>(List.of(2048));
+        Duration duration = Duration.ofSeconds(10);
+        Duration warmup = Duration.ofSeconds(3);
+        Duration drainTimeout = Duration.ofSeconds(60);
+        long latencyMillis = 5;
+        long jitterMillis = 2;
+        double throttleRatio;
+        double errorRatio;
+        int serverThreads = 64;
+        int maxConnections = 50;
+        boolean fsync = true;
+        double kneeGain = 0.1;
+        String out = "load-result.json";
+
+        static Options parse(final String[] args) {
+            final Options options = new Options();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                    throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+                }
+                final String name = arg.substring(2, arg.indexOf('='));
+                final String value = arg.substring(arg.indexOf('=') + 1).trim();
+                switch (name) {
+                    case "modes":
+                        options.modes.clear();
+                        for (String mode : value.split(",")) {
+                            options.modes.add(ActionletSendPath.Mode.of(mode));
+                        }
+                        break;
+                    case "threads":
+                        options.threads = ints(value);
+                        break;
+                    case "payload":
+                        options.payloadBytes = ints(value);
+                        break;
+                    case "duration":
+                        options.duration = Duration.ofSeconds(Long.parseLong(value));
+                        break;
+                    case "warmup":
+                        options.warmup = Duration.ofSeconds(Long.parseLong(value));
+                        break;
+                    case "drain-timeout":
+                        options.drainTimeout = Duration.ofSeconds(Long.parseLong(value));
+                        break;
+                    case "latency-ms":
+                        options.latencyMillis = Long.parseLong(value);
+                        break;
+                    case "jitter-ms":
+                        options.jitterMillis = Long.parseLong(value);
+                        break;
+                    case "throttle":
+                        options.throttleRatio = Double.parseDouble(value);
+                        break;
+                    case "errors":
+                        options.errorRatio = Double.parseDouble(value);
+                        break;
+                    case "server-threads":
+                        options.serverThreads = Integer.parseInt(value);
+                        break;
+                    case "max-connections":
+                        options.maxConnections = Integer.parseInt(value);
+                        break;
+                    case "fsync":
+                        options.fsync = Boolean.parseBoolean(value);
+                        break;
+                    case "knee-gain":
+                        options.kneeGain = Double.parseDouble(value);
+                        break;
+                    case "out":
+                        options.out = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: --" + name);
+                }
+            }
+            return options;
+        }
+
+        private static List<Integer> ints(final String value) {
+            final List<Integer> values = new ArrayList<>();
+            for (String item : value.split(",")) {
+                values.add(Integer.parseInt(item.trim()));
+            }
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return "modes=" + modes.toString().toLowerCase(Locale.ROOT) + ", threads=" + threads + ", payload=" + payloadBytes
+                    + ", duration=" + duration.getSeconds() + "s, warmup=" + warmup.getSeconds() + "s, latency="
+                    + latencyMillis + "ms+" + jitterMillis + "ms, throttle=" + throttleRatio + ", errors=" + errorRatio
+                    + ", serverThreads=" + serverThreads + ", maxConnections=" + maxConnections + ", fsync=" + fsync
+                    + ", kneeGain=" + kneeGain;
+        }
+    }
+}
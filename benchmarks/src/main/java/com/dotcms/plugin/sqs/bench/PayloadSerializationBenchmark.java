@@ -0,0 +1,69 @@
+package com.dotcms.plugin.sqs.bench;
+
+import com.dotcms.plugin.sqs.AppConfig;
+import com.dotcms.plugin.sqs.ContentletPayloadSerializer;
+import com.dotcms.plugin.sqs.PayloadPipeline;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import software.amazon.awssdk.regions.Region;
+
+/**
+ * Cost of turning a contentlet into a message body: the legacy {@code Map.toString()} dump, the
+ * streamed JSON payload, and the JSON payload run through compression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadSerializationBenchmark {
+
+    /** Approximate size of the contentlet body field in bytes. */
+    @Param({"2048", "131072"})
+    public int bodyBytes;
+
+    private Map<String, Object> contentlet;
+    private PayloadPipeline pipeline;
+    private AppConfig appConfig;
+
+    @Setup
+    public void setup() {
+        contentlet = BenchmarkFixtures.contentlet(bodyBytes, 42);
+        pipeline = new PayloadPipeline();
+        appConfig = AppConfig.builder().build();
+    }
+
+    @Benchmark
+    public String mapToString() {
+        return contentlet.toString();
+    }
+
+    @Benchmark
+    public String serializeJson() throws IOException {
+        return ContentletPayloadSerializer.serialize(contentlet, Collections.emptySet(), Collections.emptySet());
+    }
+
+    @Benchmark
+    public PayloadPipeline.EncodedPayload serializeAndEncode() throws IOException {
+        return pipeline.encode(
+                ContentletPayloadSerializer.serialize(contentlet, Collections.emptySet(), Collections.emptySet()),
+                appConfig, Region.US_EAST_1);
+    }
+}
@@ -0,0 +1,168 @@
+package com.dotcms.plugin.sqs.bench;
+
+import com.dotcms.plugin.sqs.AppConfig;
+import com.dotcms.plugin.sqs.ContentletPayloadSerializer;
+import com.dotcms.plugin.sqs.PayloadPipeline;
+import com.dotcms.plugin.sqs.SendGuardRegistry;
+import com.dotcms.plugin.sqs.SqsAsyncDispatcher;
+import com.dotcms.plugin.sqs.SqsBatchDispatcher;
+import com.dotcms.plugin.sqs.SqsClientRegistry;
+import com.dotcms.plugin.sqs.SqsMessageSender;
+import com.dotcms.plugin.sqs.SqsMetrics;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+/**
+ * Message throughput of the send modes with several workflow threads publishing at once. Every
+ * benchmark counts messages, so batch and single sends are directly comparable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Threads(8)
+@Fork(1)
+public class SendBenchmark {
+
+    private static final int BATCH = 10;
+
+    /** Simulated SQS response time in microseconds. */
+    @Param({"0", "2000"})
+    public long latencyMicros;
+
+    private FakeSqsServer server;
+    private SqsClientRegistry registry;
+    private SendGuardRegistry guards;
+    private SqsAsyncDispatcher asyncDispatcher;
+    private SqsBatchDispatcher batchDispatcher;
+    private SqsClient client;
+    private SqsAsyncClient asyncClient;
+    private AppConfig appConfig;
+    private SqsMessageSender sender;
+    private SqsMessageSender.OutgoingMessage message;
+    private String queueUrl;
+    private String body;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        server = new FakeSqsServer(32).latency(latencyMicros, 0, TimeUnit.MICROSECONDS).start();
+        queueUrl = server.queueUrl("send-benchmark");
+        body = ContentletPayloadSerializer.serialize(BenchmarkFixtures.contentlet(2048, 7),
+                Collections.emptySet(), Collections.emptySet());
+
+        registry = new SqsClientRegistry(4, 64, Duration.ofSeconds(60), Duration.ofHours(1), Duration.ofSeconds(1));
+        client = registry.getClient(Region.US_EAST_1, BenchmarkFixtures.ACCESS_KEY, BenchmarkFixtures.SECRET_KEY,
+                server.getEndpoint());
+        asyncClient = registry.getAsyncClient(Region.US_EAST_1, BenchmarkFixtures.ACCESS_KEY,
+                BenchmarkFixtures.SECRET_KEY, server.getEndpoint());
+
+        final SqsMetrics metrics = new SqsMetrics();
+        guards = BenchmarkFixtures.unlimitedGuards(metrics);
+        asyncDispatcher = new SqsAsyncDispatcher(guards, 10_000, 2, 64, Duration.ofSeconds(30));
+        batchDispatcher = new SqsBatchDispatcher(guards, 2, 2);
+        appConfig = AppConfig.builder().build();
+
+        sender = new SqsMessageSender(registry, server.getEndpoint(), guards, new PayloadPipeline(), metrics,
+                asyncDispatcher, batchDispatcher, null, false, Duration.ofSeconds(60));
+        message = SqsMessageSender.OutgoingMessage.builder()
+                .queueUrl(queueUrl)
+                .region(Region.US_EAST_1)
+                .appConfig(AppConfig.builder()
+                        .awsAccessKey(BenchmarkFixtures.ACCESS_KEY)
+                        .awsSecretKey(BenchmarkFixtures.SECRET_KEY)
+                        .maxConnections(64)
+                        .build())
+                .body(body)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        asyncDispatcher.shutdown(Duration.ofSeconds(30));
+        batchDispatcher.shutdown(Duration.ofSeconds(30));
+        registry.shutdown();
+        server.close();
+    }
+
+    @Benchmark
+    public Object syncSingle() {
+        return client.sendMessage(request());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object syncBatch() {
+        final List<SendMessageBatchRequestEntry> entries = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            entries.add(SendMessageBatchRequestEntry.builder().id(Integer.toString(i)).messageBody(body).build());
+        }
+        return client.sendMessageBatch(SendMessageBatchRequest.builder().queueUrl(queueUrl).entries(entries).build());
+    }
+
+    @Benchmark
+    public Object asyncSingle() {
+        return asyncClient.sendMessage(request()).join();
+    }
+
+    /**
+     * Fire-and-forget through the bounded dispatcher queue. With the BLOCK policy the sustained
+     * rate settles at the rate the dispatcher drains the queue.
+     */
+    @Benchmark
+    public boolean asyncDispatcher() {
+        return asyncDispatcher.submit(asyncClient, request(), SqsAsyncDispatcher.QueueFullPolicy.BLOCK);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object batchDispatcher() {
+        final List<CompletableFuture<String>> results = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            results.add(batchDispatcher.submit(asyncClient, request(), appConfig));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * A synchronous send through the actionlet's send path: client lookup, payload encoding, send
+     * guards and {@code SendMessage}.
+     */
+    @Benchmark
+    public void actionletSend() throws Exception {
+        sender.send(message);
+    }
+
+    private SendMessageRequest request() {
+        return SendMessageRequest.builder().queueUrl(queueUrl).messageBody(body).build();
+    }
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import org.apache.commons.io.IOUtils;
+import com.dotcms.rest.config.RestServiceUtil;
 import com.dotcms.security.apps.AppSecretSavedEvent;
 import com.dotcms.system.event.local.business.LocalSystemEventsAPI;
 import com.dotmarketing.business.APILocator;
@@ -44,6 +45,7 @@ public class Activator extends GenericBundleActivator {
             try {
                 //Initializing services...
                 initializeServices(bundleContext);
+                SqsServices.start();
                 Logger.info(this.getClass().getName(), "Services initialized successfully");
             } catch (Exception e) {
                 Logger.error(this.getClass().getName(), "Error initializing services at line " + Thread.currentThread().getStackTrace()[1].getLineNumber() + ": " + e.getMessage(), e);
@@ -59,6 +61,15 @@ public class Activator extends GenericBundleActivator {
                 throw e;
             }
 
+            try {
+                //Registering the admin REST endpoints
+                RestServiceUtil.addResource(SqsPluginResource.class);
+                Logger.info(this.getClass().getName(), "SQS REST resource registered successfully");
+            } catch (Exception e) {
+                Logger.error(this.getClass().getName(), "Error registering SQS REST resource at line " + Thread.currentThread().getStackTrace()[1].getLineNumber() + ": " + e.getMessage(), e);
+                throw e;
+            }
+
             try {
                 //Registering the AWS SQS App
                 copyAppYml();
@@ -84,6 +95,11 @@ public class Activator extends GenericBundleActivator {
         unsubscribeToAppSaveEvent();
         deleteYml();
 
+        RestServiceUtil.removeResource(SqsPluginResource.class);
+
+        //Closing the pooled SQS clients so no threads or sockets leak on redeploy
+        SqsServices.stop();
+
         //Unregister all the bundle services
         unregisterServices(context);
 
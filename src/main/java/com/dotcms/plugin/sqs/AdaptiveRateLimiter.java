@@ -0,0 +1,93 @@
+package com.dotcms.plugin.sqs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, implemented as a generic cell rate algorithm: a single atomic holds the
+ * theoretical arrival time of the next request, and a request is admitted when that time is no further
+ * ahead than the burst allowance. The rate adapts to SQS throttling: it is halved on every throttle
+ * and creeps back up towards the configured maximum on every success.
+ */
+public class AdaptiveRateLimiter {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double maxRate;
+    private final double minRate;
+    private final int burst;
+
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+    private final AtomicLong intervalNanos;
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AdaptiveRateLimiter(final double maxRate, final double minRate, final int burst) {
+        this.maxRate = maxRate;
+        this.minRate = Math.min(minRate, maxRate);
+        this.burst = Math.max(1, burst);
+        this.intervalNanos = new AtomicLong(toInterval(maxRate));
+    }
+
+    /**
+     * Reserves a slot for one request.
+     *
+     * @param maxWaitNanos how long the caller is willing to wait for the slot
+     * @return the nanoseconds the caller must wait before sending, or -1 if the slot is further away than allowed
+     */
+    public long reserve(final long maxWaitNanos) {
+        final long interval = intervalNanos.get();
+        final long tolerance = interval * (burst - 1);
+        while (true) {
+            final long now = System.nanoTime();
+            final long tat = theoreticalArrival.get();
+            final long start = Math.max(tat, now);
+            final long wait = start - now - tolerance;
+            if (wait > maxWaitNanos) {
+                rejected.incrementAndGet();
+                return -1;
+            }
+            if (theoreticalArrival.compareAndSet(tat, start + interval)) {
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    /**
+     * Gives back a slot from {@link #reserve(long)} that was not used.
+     */
+    public void release() {
+        theoreticalArrival.addAndGet(-intervalNanos.get());
+    }
+
+    public void onSuccess() {
+        final long interval = intervalNanos.get();
+        final long target = toInterval(maxRate);
+        if (interval > target) {
+            // Additive increase of roughly 1% of the rate per success
+            intervalNanos.compareAndSet(interval, Math.max(target, interval - interval / 100));
+        }
+    }
+
+    public void onThrottled() {
+        throttled.incrementAndGet();
+        final long interval = intervalNanos.get();
+        intervalNanos.compareAndSet(interval, Math.min(toInterval(minRate), interval * 2));
+    }
+
+    public double getCurrentRate() {
+        return (double) NANOS_PER_SECOND / intervalNanos.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    private static long toInterval(final double rate) {
+        return rate <= 0 ? 1 : Math.max(1, (long) (NANOS_PER_SECOND / rate));
+    }
+}
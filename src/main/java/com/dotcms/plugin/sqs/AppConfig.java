@@ -12,25 +12,129 @@ public class AppConfig implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    public static final int DEFAULT_BATCH_SIZE = 10;
+    public static final long DEFAULT_BATCH_LINGER_MILLIS = 50;
+    public static final int DEFAULT_BATCH_MAX_IN_FLIGHT = 4;
+    public static final int DEFAULT_COMPRESSION_THRESHOLD_BYTES = 64 * 1024;
+    public static final String DEFAULT_HTTP_CLIENT = "apache";
+    public static final int DEFAULT_MAX_CONNECTIONS = 50;
+    public static final int DEFAULT_CONNECTION_TIMEOUT_MILLIS = 2000;
+    public static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 30000;
+    public static final String DEFAULT_RETRY_MODE = "standard";
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final String DEFAULT_CREDENTIAL_MODE = "static";
+    public static final String DEFAULT_ROLE_SESSION_NAME = "dotcms-sqs";
+    public static final int DEFAULT_ROLE_DURATION_SECONDS = 3600;
+
     public AppConfig() {
         this.awsAccessKey = null;
         this.awsSecretKey = null;
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.batchLingerMillis = DEFAULT_BATCH_LINGER_MILLIS;
+        this.batchMaxInFlight = DEFAULT_BATCH_MAX_IN_FLIGHT;
+        this.compressionThresholdBytes = DEFAULT_COMPRESSION_THRESHOLD_BYTES;
+        this.offloadStore = null;
+        this.offloadLocation = null;
+        this.httpClient = DEFAULT_HTTP_CLIENT;
+        this.maxConnections = DEFAULT_MAX_CONNECTIONS;
+        this.connectionTimeoutMillis = DEFAULT_CONNECTION_TIMEOUT_MILLIS;
+        this.socketTimeoutMillis = DEFAULT_SOCKET_TIMEOUT_MILLIS;
+        this.apiCallTimeoutMillis = 0;
+        this.apiCallAttemptTimeoutMillis = 0;
+        this.tcpKeepAlive = false;
+        this.retryMode = DEFAULT_RETRY_MODE;
+        this.maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        this.hostId = null;
+        this.maxSendRate = 0;
+        this.credentialMode = DEFAULT_CREDENTIAL_MODE;
+        this.roleArn = null;
+        this.externalId = null;
+        this.roleSessionName = DEFAULT_ROLE_SESSION_NAME;
+        this.roleDurationSeconds = DEFAULT_ROLE_DURATION_SECONDS;
+        this.stsEndpoint = null;
     }
 
     public final String awsAccessKey;
     public final String awsSecretKey;
+    public final int batchSize;
+    public final long batchLingerMillis;
+    public final int batchMaxInFlight;
+    public final int compressionThresholdBytes;
+    public final String offloadStore;
+    public final String offloadLocation;
+    public final String httpClient;
+    public final int maxConnections;
+    public final int connectionTimeoutMillis;
+    public final int socketTimeoutMillis;
+    public final int apiCallTimeoutMillis;
+    public final int apiCallAttemptTimeoutMillis;
+    public final boolean tcpKeepAlive;
+    public final String retryMode;
+    public final int maxAttempts;
+    public final String hostId;
+    public final int maxSendRate;
+    public final String credentialMode;
+    public final String roleArn;
+    public final String externalId;
+    public final String roleSessionName;
+    public final int roleDurationSeconds;
+    public final String stsEndpoint;
 
 
     
     @Override
     public String toString() {
-        return "AppConfig {awsAccessKey:" + awsAccessKey + ", awsSecretKey:" + awsSecretKey + "}";
+        return "AppConfig {awsAccessKey:" + awsAccessKey + ", awsSecretKey:" + awsSecretKey + ", batchSize:" + batchSize
+                        + ", batchLingerMillis:" + batchLingerMillis + ", batchMaxInFlight:" + batchMaxInFlight
+                        + ", compressionThresholdBytes:" + compressionThresholdBytes
+                        + ", offloadStore:" + offloadStore
+                        + ", offloadLocation:" + offloadLocation
+                        + ", httpClient:" + httpClient
+                        + ", maxConnections:" + maxConnections
+                        + ", connectionTimeoutMillis:" + connectionTimeoutMillis
+                        + ", socketTimeoutMillis:" + socketTimeoutMillis
+                        + ", apiCallTimeoutMillis:" + apiCallTimeoutMillis
+                        + ", apiCallAttemptTimeoutMillis:" + apiCallAttemptTimeoutMillis
+                        + ", tcpKeepAlive:" + tcpKeepAlive
+                        + ", retryMode:" + retryMode
+                        + ", maxAttempts:" + maxAttempts
+                        + ", hostId:" + hostId
+                        + ", maxSendRate:" + maxSendRate
+                        + ", credentialMode:" + credentialMode
+                        + ", roleArn:" + roleArn
+                        + ", externalId:" + externalId
+                        + ", roleSessionName:" + roleSessionName
+                        + ", roleDurationSeconds:" + roleDurationSeconds
+                        + ", stsEndpoint:" + stsEndpoint + "}";
     }
 
 
     private AppConfig(Builder builder) {
         this.awsAccessKey = builder.awsAccessKey;
         this.awsSecretKey = builder.awsSecretKey;
+        this.batchSize = builder.batchSize;
+        this.batchLingerMillis = builder.batchLingerMillis;
+        this.batchMaxInFlight = builder.batchMaxInFlight;
+        this.compressionThresholdBytes = builder.compressionThresholdBytes;
+        this.offloadStore = builder.offloadStore;
+        this.offloadLocation = builder.offloadLocation;
+        this.httpClient = builder.httpClient;
+        this.maxConnections = builder.maxConnections;
+        this.connectionTimeoutMillis = builder.connectionTimeoutMillis;
+        this.socketTimeoutMillis = builder.socketTimeoutMillis;
+        this.apiCallTimeoutMillis = builder.apiCallTimeoutMillis;
+        this.apiCallAttemptTimeoutMillis = builder.apiCallAttemptTimeoutMillis;
+        this.tcpKeepAlive = builder.tcpKeepAlive;
+        this.retryMode = builder.retryMode;
+        this.maxAttempts = builder.maxAttempts;
+        this.hostId = builder.hostId;
+        this.maxSendRate = builder.maxSendRate;
+        this.credentialMode = builder.credentialMode;
+        this.roleArn = builder.roleArn;
+        this.externalId = builder.externalId;
+        this.roleSessionName = builder.roleSessionName;
+        this.roleDurationSeconds = builder.roleDurationSeconds;
+        this.stsEndpoint = builder.stsEndpoint;
     }
 
 
@@ -62,12 +166,58 @@ public class AppConfig implements Serializable {
     public static final class Builder {
         private String awsAccessKey;
         private String awsSecretKey;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private long batchLingerMillis = DEFAULT_BATCH_LINGER_MILLIS;
+        private int batchMaxInFlight = DEFAULT_BATCH_MAX_IN_FLIGHT;
+        private int compressionThresholdBytes = DEFAULT_COMPRESSION_THRESHOLD_BYTES;
+        private String offloadStore;
+        private String offloadLocation;
+        private String httpClient = DEFAULT_HTTP_CLIENT;
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+        private int connectionTimeoutMillis = DEFAULT_CONNECTION_TIMEOUT_MILLIS;
+        private int socketTimeoutMillis = DEFAULT_SOCKET_TIMEOUT_MILLIS;
+        private int apiCallTimeoutMillis = 0;
+        private int apiCallAttemptTimeoutMillis = 0;
+        private boolean tcpKeepAlive = false;
+        private String retryMode = DEFAULT_RETRY_MODE;
+        private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private String hostId;
+        private int maxSendRate = 0;
+        private String credentialMode = DEFAULT_CREDENTIAL_MODE;
+        private String roleArn;
+        private String externalId;
+        private String roleSessionName = DEFAULT_ROLE_SESSION_NAME;
+        private int roleDurationSeconds = DEFAULT_ROLE_DURATION_SECONDS;
+        private String stsEndpoint;
 
         private Builder() {}
 
         private Builder(AppConfig appConfig) {
             this.awsAccessKey = appConfig.awsAccessKey;
             this.awsSecretKey = appConfig.awsSecretKey;
+            this.batchSize = appConfig.batchSize;
+            this.batchLingerMillis = appConfig.batchLingerMillis;
+            this.batchMaxInFlight = appConfig.batchMaxInFlight;
+            this.compressionThresholdBytes = appConfig.compressionThresholdBytes;
+            this.offloadStore = appConfig.offloadStore;
+            this.offloadLocation = appConfig.offloadLocation;
+            this.httpClient = appConfig.httpClient;
+            this.maxConnections = appConfig.maxConnections;
+            this.connectionTimeoutMillis = appConfig.connectionTimeoutMillis;
+            this.socketTimeoutMillis = appConfig.socketTimeoutMillis;
+            this.apiCallTimeoutMillis = appConfig.apiCallTimeoutMillis;
+            this.apiCallAttemptTimeoutMillis = appConfig.apiCallAttemptTimeoutMillis;
+            this.tcpKeepAlive = appConfig.tcpKeepAlive;
+            this.retryMode = appConfig.retryMode;
+            this.maxAttempts = appConfig.maxAttempts;
+            this.hostId = appConfig.hostId;
+            this.maxSendRate = appConfig.maxSendRate;
+            this.credentialMode = appConfig.credentialMode;
+            this.roleArn = appConfig.roleArn;
+            this.externalId = appConfig.externalId;
+            this.roleSessionName = appConfig.roleSessionName;
+            this.roleDurationSeconds = appConfig.roleDurationSeconds;
+            this.stsEndpoint = appConfig.stsEndpoint;
 
 
         }
@@ -84,6 +234,144 @@ public class AppConfig implements Serializable {
         }
 
 
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+
+        public Builder batchLingerMillis(long batchLingerMillis) {
+            this.batchLingerMillis = batchLingerMillis;
+            return this;
+        }
+
+
+        public Builder batchMaxInFlight(int batchMaxInFlight) {
+            this.batchMaxInFlight = batchMaxInFlight;
+            return this;
+        }
+
+
+        public Builder compressionThresholdBytes(int compressionThresholdBytes) {
+            this.compressionThresholdBytes = compressionThresholdBytes;
+            return this;
+        }
+
+
+        public Builder offloadStore(String offloadStore) {
+            this.offloadStore = offloadStore;
+            return this;
+        }
+
+
+        public Builder offloadLocation(String offloadLocation) {
+            this.offloadLocation = offloadLocation;
+            return this;
+        }
+
+
+        public Builder httpClient(String httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+
+        public Builder maxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+
+        public Builder connectionTimeoutMillis(int connectionTimeoutMillis) {
+            this.connectionTimeoutMillis = connectionTimeoutMillis;
+            return this;
+        }
+
+
+        public Builder socketTimeoutMillis(int socketTimeoutMillis) {
+            this.socketTimeoutMillis = socketTimeoutMillis;
+            return this;
+        }
+
+
+        public Builder apiCallTimeoutMillis(int apiCallTimeoutMillis) {
+            this.apiCallTimeoutMillis = apiCallTimeoutMillis;
+            return this;
+        }
+
+
+        public Builder apiCallAttemptTimeoutMillis(int apiCallAttemptTimeoutMillis) {
+            this.apiCallAttemptTimeoutMillis = apiCallAttemptTimeoutMillis;
+            return this;
+        }
+
+
+        public Builder tcpKeepAlive(boolean tcpKeepAlive) {
+            this.tcpKeepAlive = tcpKeepAlive;
+            return this;
+        }
+
+
+        public Builder retryMode(String retryMode) {
+            this.retryMode = retryMode;
+            return this;
+        }
+
+
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+
+        public Builder hostId(String hostId) {
+            this.hostId = hostId;
+            return this;
+        }
+
+
+        public Builder maxSendRate(int maxSendRate) {
+            this.maxSendRate = maxSendRate;
+            return this;
+        }
+
+
+        public Builder credentialMode(String credentialMode) {
+            this.credentialMode = credentialMode;
+            return this;
+        }
+
+
+        public Builder roleArn(String roleArn) {
+            this.roleArn = roleArn;
+            return this;
+        }
+
+
+        public Builder externalId(String externalId) {
+            this.externalId = externalId;
+            return this;
+        }
+
+
+        public Builder roleSessionName(String roleSessionName) {
+            this.roleSessionName = roleSessionName;
+            return this;
+        }
+
+
+        public Builder roleDurationSeconds(int roleDurationSeconds) {
+            this.roleDurationSeconds = roleDurationSeconds;
+            return this;
+        }
+
+
+        public Builder stsEndpoint(String stsEndpoint) {
+            this.stsEndpoint = stsEndpoint;
+            return this;
+        }
+
+
         public AppConfig build() {
             return new AppConfig(this);
         }
@@ -0,0 +1,208 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotcms.security.apps.AppSecrets;
+import com.dotcms.security.apps.Secret;
+import com.dotmarketing.beans.Host;
+import com.dotmarketing.business.APILocator;
+import com.dotmarketing.util.Config;
+import com.dotmarketing.util.Logger;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the resolved {@link AppConfig} of every site in memory so the workflow hot path does not hit
+ * the AppsAPI on every execution. A site without its own App secrets uses the ones of the system
+ * host; that outcome is cached as well. Entries are invalidated and rebuilt by
+ * {@link AppSecretEventSubscriber} whenever the App secrets of a site are saved.
+ */
+public class AppConfigCache {
+
+    private final Map<String, AppConfig> configs = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns the cached configuration of the system host, loading it from the AppsAPI on a miss.
+     *
+     * @return the current App configuration
+     * @throws IllegalStateException if the App is not configured
+     */
+    public AppConfig get() {
+        return get(Host.SYSTEM_HOST);
+    }
+
+    /**
+     * Returns the cached configuration of a site, loading it from the AppsAPI on a miss.
+     *
+     * @param hostId the site identifier, or null for the system host
+     * @return the App configuration of the site, or of the system host if the site has none
+     * @throws IllegalStateException if neither the site nor the system host is configured
+     */
+    public AppConfig get(final String hostId) {
+        final String key = hostId == null || hostId.isEmpty() ? Host.SYSTEM_HOST : hostId;
+        final AppConfig config = configs.get(key);
+        if (config != null) {
+            hits.incrementAndGet();
+            return config;
+        }
+        misses.incrementAndGet();
+        if (Host.SYSTEM_HOST.equals(key)) {
+            return configs.computeIfAbsent(key, this::load);
+        }
+        // Not inside computeIfAbsent, a fallback loads the system host entry of the same map
+        final AppConfig loaded = load(key);
+        final AppConfig previous = configs.putIfAbsent(key, loaded);
+        return previous != null ? previous : loaded;
+    }
+
+    /**
+     * Drops the cached configuration of a site and tries to load the new one right away, so the
+     * next workflow execution does not pay for the lookup. A change on the system host also drops
+     * every site that falls back to it.
+     *
+     * @param hostId the site whose secrets were saved, or null if unknown
+     */
+    public void refresh(final String hostId) {
+        if (hostId == null || hostId.isEmpty()) {
+            configs.clear();
+        } else if (Host.SYSTEM_HOST.equals(hostId)) {
+            configs.entrySet().removeIf(entry -> Host.SYSTEM_HOST.equals(entry.getValue().hostId));
+        } else {
+            configs.remove(hostId);
+        }
+        try {
+            get(hostId);
+        } catch (Exception e) {
+            Logger.warn(this, "AWS SQS app configuration could not be reloaded: " + e.getMessage());
+        }
+    }
+
+    public void invalidate() {
+        configs.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private AppConfig load(final String hostId) {
+        Logger.info(this, "Retrieving AWS credentials from dotCMS app configuration for host: " + hostId);
+
+        // Get the AWS credentials from the app configuration of the site
+        Optional<AppSecrets> appSecrets;
+        try {
+            final Host host = Host.SYSTEM_HOST.equals(hostId)
+                    ? APILocator.systemHost()
+                    : APILocator.getHostAPI().find(hostId, APILocator.systemUser(), false);
+            appSecrets = host != null
+                    ? APILocator.getAppsAPI().getSecrets(AppKeys.APP_KEY, host, APILocator.systemUser())
+                    : Optional.empty();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to read AWS SQS app secrets: " + e.getMessage(), e);
+        }
+
+        if (!appSecrets.isPresent() && !Host.SYSTEM_HOST.equals(hostId)) {
+            // The site shares the configuration, and the clients, of the system host
+            return get(Host.SYSTEM_HOST);
+        }
+
+        if (!appSecrets.isPresent()) {
+            throw new IllegalStateException("AWS SQS app secrets not found. Please configure the AWS credentials in the dotCMS app configuration.");
+        }
+
+        Map<String, Secret> secretsMap = appSecrets.get().getSecrets();
+
+        if (secretsMap == null || secretsMap.isEmpty()) {
+            throw new IllegalStateException("AWS SQS app configuration is empty. Please check the app configuration.");
+        }
+
+        Secret accessKeySecret = secretsMap.get(AppKeys.AWS_ACCESS_KEY.key);
+        Secret secretKeySecret = secretsMap.get(AppKeys.AWS_SECRET_KEY.key);
+
+        String awsAccessKey = accessKeySecret != null ? new String(accessKeySecret.getValue()) : null;
+        String awsSecretKey = secretKeySecret != null ? new String(secretKeySecret.getValue()) : null;
+
+        final String credentialMode = stringSecret(secretsMap, AppKeys.CREDENTIAL_MODE);
+        final AwsCredentialsConfig.CredentialMode mode = AwsCredentialsConfig.CredentialMode.of(credentialMode);
+        final String roleArn = stringSecret(secretsMap, AppKeys.ROLE_ARN);
+
+        if (mode == AwsCredentialsConfig.CredentialMode.STATIC) {
+            if (awsAccessKey == null || awsAccessKey.isEmpty()) {
+                throw new IllegalStateException("AWS Access Key is missing or empty. Please configure it in the dotCMS app configuration.");
+            }
+
+            if (awsSecretKey == null || awsSecretKey.isEmpty()) {
+                throw new IllegalStateException("AWS Secret Key is missing or empty. Please configure it in the dotCMS app configuration.");
+            }
+        }
+
+        if (mode == AwsCredentialsConfig.CredentialMode.ASSUME_ROLE && (roleArn == null || roleArn.isEmpty())) {
+            throw new IllegalStateException("AWS Role ARN is missing or empty. It is required by the assume-role credential mode.");
+        }
+
+        Logger.info(this, "Using AWS credential mode: " + mode.name().toLowerCase() + (roleArn != null ? ", role: " + roleArn : ""));
+        if (awsAccessKey != null && !awsAccessKey.isEmpty()) {
+            // Log partial key for debugging (never log full secret keys)
+            Logger.info(this, "Using AWS access key: " + awsAccessKey.substring(0, Math.min(4, awsAccessKey.length())) + "...");
+        }
+
+        return AppConfig.builder()
+                .hostId(hostId)
+                .awsAccessKey(awsAccessKey)
+                .awsSecretKey(awsSecretKey)
+                .credentialMode(credentialMode)
+                .roleArn(roleArn)
+                .externalId(stringSecret(secretsMap, AppKeys.EXTERNAL_ID))
+                .roleSessionName(stringSecret(secretsMap, AppKeys.ROLE_SESSION_NAME))
+                .roleDurationSeconds(intSecret(secretsMap, AppKeys.ROLE_DURATION_SECONDS, AppConfig.DEFAULT_ROLE_DURATION_SECONDS))
+                .stsEndpoint(stringSecret(secretsMap, AppKeys.STS_ENDPOINT))
+                .batchSize(intSecret(secretsMap, AppKeys.BATCH_SIZE, AppConfig.DEFAULT_BATCH_SIZE))
+                .batchLingerMillis(intSecret(secretsMap, AppKeys.BATCH_LINGER_MILLIS, (int) AppConfig.DEFAULT_BATCH_LINGER_MILLIS))
+                .batchMaxInFlight(intSecret(secretsMap, AppKeys.BATCH_MAX_IN_FLIGHT, AppConfig.DEFAULT_BATCH_MAX_IN_FLIGHT))
+                .compressionThresholdBytes(intSecret(secretsMap, AppKeys.COMPRESSION_THRESHOLD_BYTES, AppConfig.DEFAULT_COMPRESSION_THRESHOLD_BYTES))
+                .offloadStore(stringSecret(secretsMap, AppKeys.OFFLOAD_STORE))
+                .offloadLocation(stringSecret(secretsMap, AppKeys.OFFLOAD_LOCATION))
+                .httpClient(stringSecret(secretsMap, AppKeys.HTTP_CLIENT))
+                .maxConnections(intSecret(secretsMap, AppKeys.MAX_CONNECTIONS,
+                        Config.getIntProperty("AWS_SQS_MAX_CONNECTIONS", AppConfig.DEFAULT_MAX_CONNECTIONS)))
+                .connectionTimeoutMillis(intSecret(secretsMap, AppKeys.CONNECTION_TIMEOUT_MILLIS, AppConfig.DEFAULT_CONNECTION_TIMEOUT_MILLIS))
+                .socketTimeoutMillis(intSecret(secretsMap, AppKeys.SOCKET_TIMEOUT_MILLIS, AppConfig.DEFAULT_SOCKET_TIMEOUT_MILLIS))
+                .apiCallTimeoutMillis(intSecret(secretsMap, AppKeys.API_CALL_TIMEOUT_MILLIS, 0))
+                .apiCallAttemptTimeoutMillis(intSecret(secretsMap, AppKeys.API_CALL_ATTEMPT_TIMEOUT_MILLIS, 0))
+                .tcpKeepAlive(Boolean.parseBoolean(stringSecret(secretsMap, AppKeys.TCP_KEEP_ALIVE)))
+                .retryMode(stringSecret(secretsMap, AppKeys.RETRY_MODE))
+                .maxAttempts(intSecret(secretsMap, AppKeys.MAX_ATTEMPTS, AppConfig.DEFAULT_MAX_ATTEMPTS))
+                .maxSendRate(intSecret(secretsMap, AppKeys.MAX_SEND_RATE, 0))
+                .build();
+    }
+
+    private String stringSecret(final Map<String, Secret> secretsMap, final AppKeys appKey) {
+        final Secret secret = secretsMap.get(appKey.key);
+        if (secret == null || secret.getValue() == null || secret.getValue().length == 0) {
+            return null;
+        }
+        return new String(secret.getValue()).trim();
+    }
+
+    private int intSecret(final Map<String, Secret> secretsMap, final AppKeys appKey, final int defaultValue) {
+        final Secret secret = secretsMap.get(appKey.key);
+        if (secret == null || secret.getValue() == null || secret.getValue().length == 0) {
+            return defaultValue;
+        }
+        final String value = new String(secret.getValue()).trim();
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            Logger.warn(this, "Invalid value for " + appKey.key + ": '" + value + "'. Using default value " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
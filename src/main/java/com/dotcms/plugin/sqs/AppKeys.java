@@ -2,7 +2,29 @@ package com.dotcms.plugin.sqs;
 
 public enum AppKeys {
     AWS_ACCESS_KEY("awsAccessKey"),
-    AWS_SECRET_KEY("awsSecretKey");
+    AWS_SECRET_KEY("awsSecretKey"),
+    BATCH_SIZE("batchSize"),
+    BATCH_LINGER_MILLIS("batchLingerMillis"),
+    BATCH_MAX_IN_FLIGHT("batchMaxInFlight"),
+    COMPRESSION_THRESHOLD_BYTES("compressionThresholdBytes"),
+    OFFLOAD_STORE("offloadStore"),
+    OFFLOAD_LOCATION("offloadLocation"),
+    HTTP_CLIENT("httpClient"),
+    MAX_CONNECTIONS("maxConnections"),
+    CONNECTION_TIMEOUT_MILLIS("connectionTimeoutMillis"),
+    SOCKET_TIMEOUT_MILLIS("socketTimeoutMillis"),
+    API_CALL_TIMEOUT_MILLIS("apiCallTimeoutMillis"),
+    API_CALL_ATTEMPT_TIMEOUT_MILLIS("apiCallAttemptTimeoutMillis"),
+    TCP_KEEP_ALIVE("tcpKeepAlive"),
+    RETRY_MODE("retryMode"),
+    MAX_ATTEMPTS("maxAttempts"),
+    MAX_SEND_RATE("maxSendRate"),
+    CREDENTIAL_MODE("credentialMode"),
+    ROLE_ARN("roleArn"),
+    EXTERNAL_ID("externalId"),
+    ROLE_SESSION_NAME("roleSessionName"),
+    ROLE_DURATION_SECONDS("roleDurationSeconds"),
+    STS_ENDPOINT("stsEndpoint");
 
     final public String key;
 
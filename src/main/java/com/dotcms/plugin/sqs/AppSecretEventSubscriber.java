@@ -16,6 +16,8 @@ public class AppSecretEventSubscriber implements EventSubscriber<AppSecretSavedE
 
     @Override
     public void notify(AppSecretSavedEvent event) {
-        Logger.info(this.getClass().getName(), "We got a secret event for : " + event.getKey() + " from: " + event.getUserId());
+        Logger.info(this.getClass().getName(), "We got a secret event for : " + event.getKey() + " from: " + event.getUserId()
+                + " on host: " + event.getHostIdentifier());
+        SqsServices.onAppSecretsChanged(event.getHostIdentifier());
     }
 }
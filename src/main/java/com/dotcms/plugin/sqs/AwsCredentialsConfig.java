@@ -0,0 +1,338 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Config;
+import com.dotmarketing.util.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProviderChain;
+import software.amazon.awssdk.auth.credentials.ContainerCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.InstanceProfileCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.SystemPropertyCredentialsProvider;
+import software.amazon.awssdk.core.SdkSystemSetting;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sts.StsClient;
+import software.amazon.awssdk.services.sts.StsClientBuilder;
+import software.amazon.awssdk.services.sts.auth.StsAssumeRoleCredentialsProvider;
+import software.amazon.awssdk.services.sts.auth.StsAssumeRoleWithWebIdentityCredentialsProvider;
+import software.amazon.awssdk.services.sts.model.AssumeRoleRequest;
+import software.amazon.awssdk.services.sts.model.AssumeRoleWithWebIdentityRequest;
+import software.amazon.awssdk.utils.IoUtils;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+/**
+ * How the AWS clients authenticate, taken from the App. Two configurations are equal when they
+ * would resolve the same credentials, so the {@link SqsClientRegistry} uses them as part of the
+ * client key.
+ * <p>
+ * Providers that fetch temporary credentials keep the session and renew it on a background thread
+ * before it expires, so only the first call of a new client waits for STS. A provider is built per
+ * client and closed with it, which also stops its refresh thread.
+ * <p>
+ * Every STS client is built here with the Apache HTTP client. The SDK's own web identity and default
+ * chain providers build theirs without one, which fails because several HTTP implementations are
+ * bundled, so the web identity step and the default chain are assembled here as well.
+ */
+public final class AwsCredentialsConfig {
+
+    public enum CredentialMode {
+        /** The access and secret key of the App. */
+        STATIC,
+        /** The default chain: system properties, environment, web identity, profile, container or instance role. */
+        DEFAULT,
+        /** A web identity token file, e.g. EKS IAM roles for service accounts. */
+        WEB_IDENTITY,
+        /** A role assumed through STS, with the App keys or the default chain as base credentials. */
+        ASSUME_ROLE;
+
+        public static CredentialMode of(final String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return STATIC;
+            }
+            try {
+                return CredentialMode.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                Logger.warn(CredentialMode.class, "Unknown AWS credential mode: '" + value + "'. Using static.");
+                return STATIC;
+            }
+        }
+    }
+
+    private final CredentialMode mode;
+    private final String accessKey;
+    private final String secretKey;
+    private final String roleArn;
+    private final String externalId;
+    private final String roleSessionName;
+    private final Duration roleDuration;
+    private final String stsEndpoint;
+
+    public AwsCredentialsConfig(final CredentialMode mode, final String accessKey, final String secretKey,
+                    final String roleArn, final String externalId, final String roleSessionName,
+                    final Duration roleDuration, final String stsEndpoint) {
+        this.mode = mode;
+        this.accessKey = emptyToNull(accessKey);
+        this.secretKey = emptyToNull(secretKey);
+        this.roleArn = emptyToNull(roleArn);
+        this.externalId = emptyToNull(externalId);
+        this.roleSessionName = roleSessionName != null && !roleSessionName.trim().isEmpty()
+                ? roleSessionName.trim() : AppConfig.DEFAULT_ROLE_SESSION_NAME;
+        this.roleDuration = roleDuration;
+        this.stsEndpoint = emptyToNull(stsEndpoint);
+    }
+
+    /**
+     * Static keys, used when no App configuration is at hand.
+     */
+    public static AwsCredentialsConfig staticKeys(final String accessKey, final String secretKey) {
+        return new AwsCredentialsConfig(CredentialMode.STATIC, accessKey, secretKey, null, null, null,
+                Duration.ofSeconds(AppConfig.DEFAULT_ROLE_DURATION_SECONDS), null);
+    }
+
+    public static AwsCredentialsConfig from(final AppConfig appConfig) {
+        return new AwsCredentialsConfig(
+                CredentialMode.of(appConfig.credentialMode),
+                appConfig.awsAccessKey,
+                appConfig.awsSecretKey,
+                appConfig.roleArn,
+                appConfig.externalId,
+                appConfig.roleSessionName,
+                Duration.ofSeconds(appConfig.roleDurationSeconds > 0
+                        ? appConfig.roleDurationSeconds : AppConfig.DEFAULT_ROLE_DURATION_SECONDS),
+                appConfig.stsEndpoint);
+    }
+
+    private static String emptyToNull(final String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    public CredentialMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Builds a credentials provider. The caller owns it and must close it with
+     * {@link #closeQuietly} once the clients using it are closed.
+     *
+     * @param region the region of the clients, also used for the STS endpoint
+     * @return the provider
+     */
+    public AwsCredentialsProvider provider(final Region region) {
+        switch (mode) {
+            case DEFAULT:
+                return defaultChain(region);
+            case WEB_IDENTITY:
+                final AwsCredentialsProvider webIdentity = webIdentity(region);
+                if (webIdentity == null) {
+                    throw new IllegalStateException("AWS credential mode web-identity needs the "
+                            + "AWS_WEB_IDENTITY_TOKEN_FILE environment variable and a role ARN");
+                }
+                return webIdentity;
+            case ASSUME_ROLE:
+                return assumeRole(region);
+            case STATIC:
+            default:
+                return StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+        }
+    }
+
+    private AwsCredentialsProvider assumeRole(final Region region) {
+        final AwsCredentialsProvider base = accessKey != null && secretKey != null
+                ? StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey))
+                : defaultChain(region);
+
+        final StsClient stsClient = stsClient(region, base);
+
+        final AssumeRoleRequest.Builder request = AssumeRoleRequest.builder()
+                .roleArn(roleArn)
+                .roleSessionName(roleSessionName)
+                .durationSeconds((int) roleDuration.getSeconds());
+        if (externalId != null) {
+            request.externalId(externalId);
+        }
+
+        // Renewed in the background once the session is within the prefetch time of its expiry
+        final StsAssumeRoleCredentialsProvider provider = StsAssumeRoleCredentialsProvider.builder()
+                .stsClient(stsClient)
+                .refreshRequest(request.build())
+                .asyncCredentialUpdateEnabled(true)
+                .prefetchTime(Duration.ofSeconds(Config.getIntProperty("AWS_SQS_CREDENTIALS_PREFETCH_SECONDS", 300)))
+                .staleTime(Duration.ofSeconds(Config.getIntProperty("AWS_SQS_CREDENTIALS_STALE_SECONDS", 60)))
+                .build();
+
+        Logger.info(this, "Assuming role " + roleArn + " through STS in region: " + region
+                + (stsEndpoint != null ? ", endpoint: " + stsEndpoint : ""));
+        return new OwningCredentialsProvider(provider, stsClient, base);
+    }
+
+    /**
+     * The web identity step: the token file named by {@code AWS_WEB_IDENTITY_TOKEN_FILE} exchanged
+     * for the role of the App, or of {@code AWS_ROLE_ARN}. The token file is read again for every
+     * renewal, since the platform rotates it.
+     *
+     * @return the provider, or null when no token file or role is configured
+     */
+    private AwsCredentialsProvider webIdentity(final Region region) {
+        final String tokenFile = SdkSystemSetting.AWS_WEB_IDENTITY_TOKEN_FILE.getStringValue().orElse(null);
+        final String role = roleArn != null ? roleArn : SdkSystemSetting.AWS_ROLE_ARN.getStringValue().orElse(null);
+        if (tokenFile == null || role == null) {
+            return null;
+        }
+        final Path tokenPath = Paths.get(tokenFile);
+
+        // AssumeRoleWithWebIdentity is authorized by the token, the call itself is not signed
+        final StsClient stsClient = stsClient(region, AnonymousCredentialsProvider.create());
+        final StsAssumeRoleWithWebIdentityCredentialsProvider provider = StsAssumeRoleWithWebIdentityCredentialsProvider.builder()
+                .stsClient(stsClient)
+                .refreshRequest(() -> AssumeRoleWithWebIdentityRequest.builder()
+                        .roleArn(role)
+                        .roleSessionName(roleSessionName)
+                        .durationSeconds((int) roleDuration.getSeconds())
+                        .webIdentityToken(readToken(tokenPath))
+                        .build())
+                .asyncCredentialUpdateEnabled(true)
+                .prefetchTime(Duration.ofSeconds(Config.getIntProperty("AWS_SQS_CREDENTIALS_PREFETCH_SECONDS", 300)))
+                .staleTime(Duration.ofSeconds(Config.getIntProperty("AWS_SQS_CREDENTIALS_STALE_SECONDS", 60)))
+                .build();
+
+        Logger.info(this, "Assuming role " + role + " with web identity token " + tokenFile + " in region: " + region
+                + (stsEndpoint != null ? ", endpoint: " + stsEndpoint : ""));
+        return new OwningCredentialsProvider(provider, stsClient);
+    }
+
+    /**
+     * The steps of the SDK default chain, in its order, with the web identity step built by
+     * {@link #webIdentity} so its STS client has an HTTP client.
+     */
+    private AwsCredentialsProvider defaultChain(final Region region) {
+        final List<AwsCredentialsProvider> providers = new ArrayList<>();
+        providers.add(SystemPropertyCredentialsProvider.create());
+        providers.add(EnvironmentVariableCredentialsProvider.create());
+        final AwsCredentialsProvider webIdentity = webIdentity(region);
+        if (webIdentity != null) {
+            providers.add(webIdentity);
+        }
+        providers.add(ProfileCredentialsProvider.create());
+        providers.add(ContainerCredentialsProvider.builder().asyncCredentialUpdateEnabled(true).build());
+        providers.add(InstanceProfileCredentialsProvider.builder().asyncCredentialUpdateEnabled(true).build());
+        return AwsCredentialsProviderChain.builder()
+                .credentialsProviders(providers)
+                .reuseLastProviderEnabled(true)
+                .build();
+    }
+
+    private StsClient stsClient(final Region region, final AwsCredentialsProvider credentials) {
+        final StsClientBuilder sts = StsClient.builder()
+                .region(region)
+                .credentialsProvider(credentials)
+                // Several HTTP implementations are bundled, the SDK will not pick one by itself
+                .httpClientBuilder(ApacheHttpClient.builder());
+        if (stsEndpoint != null) {
+            sts.endpointOverride(URI.create(stsEndpoint));
+        }
+        return sts.build();
+    }
+
+    private static String readToken(final Path tokenFile) {
+        try {
+            return new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            throw SdkClientException.create("Unable to read web identity token file: " + tokenFile, e);
+        }
+    }
+
+    /**
+     * Stops the background refresh of a provider from {@link #provider} and releases its STS client.
+     */
+    public static void closeQuietly(final AwsCredentialsProvider provider) {
+        try {
+            IoUtils.closeIfCloseable(provider, null);
+        } catch (Exception e) {
+            Logger.warn(AwsCredentialsConfig.class, "Error closing AWS credentials provider: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AwsCredentialsConfig)) {
+            return false;
+        }
+        final AwsCredentialsConfig that = (AwsCredentialsConfig) o;
+        return mode == that.mode && Objects.equals(accessKey, that.accessKey)
+                && Objects.equals(secretKey, that.secretKey)
+                && Objects.equals(roleArn, that.roleArn)
+                && Objects.equals(externalId, that.externalId)
+                && Objects.equals(roleSessionName, that.roleSessionName)
+                && Objects.equals(roleDuration, that.roleDuration)
+                && Objects.equals(stsEndpoint, that.stsEndpoint);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mode, accessKey, roleArn, externalId, roleSessionName, roleDuration, stsEndpoint);
+    }
+
+    /**
+     * Never contains the secret key, and only the start of the access key.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder("credentials=")
+                .append(mode.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        if (accessKey != null) {
+            builder.append(", accessKey=").append(accessKey, 0, Math.min(4, accessKey.length())).append("...");
+        }
+        if (roleArn != null) {
+            builder.append(", roleArn=").append(roleArn);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Closes the STS client and the base credentials together with the provider that uses them.
+     */
+    private static final class OwningCredentialsProvider implements AwsCredentialsProvider, SdkAutoCloseable {
+        private final AwsCredentialsProvider delegate;
+        private final Object[] resources;
+
+        OwningCredentialsProvider(final AwsCredentialsProvider delegate, final Object... resources) {
+            this.delegate = delegate;
+            this.resources = resources;
+        }
+
+        @Override
+        public AwsCredentials resolveCredentials() {
+            return delegate.resolveCredentials();
+        }
+
+        @Override
+        public void close() {
+            IoUtils.closeIfCloseable(delegate, null);
+            for (Object resource : resources) {
+                IoUtils.closeIfCloseable(resource, null);
+            }
+        }
+    }
+}
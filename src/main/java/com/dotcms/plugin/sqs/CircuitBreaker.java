@@ -0,0 +1,143 @@
+package com.dotcms.plugin.sqs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free circuit breaker over a fixed time window. The breaker opens when, within one window, at
+ * least {@code minimumCalls} calls were made and the share of failures reached {@code failureRatio}.
+ * After {@code openMillis} it lets a single probe through (half-open); the probe's outcome closes or
+ * re-opens it. A probe that never reports an outcome is replaced by the next call after
+ * {@code probeTimeoutMillis}, so a lost probe cannot keep the breaker half-open.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final double failureRatio;
+    private final int minimumCalls;
+    private final long windowNanos;
+    private final long openNanos;
+    private final long probeTimeoutNanos;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicLong openedAt = new AtomicLong();
+    /** When the current half-open probe was let through, or {@link #NO_PROBE}. */
+    private final AtomicLong probeStartedAt = new AtomicLong(NO_PROBE);
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicLong windowCalls = new AtomicLong();
+    private final AtomicLong windowFailures = new AtomicLong();
+    private final AtomicLong timesOpened = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+
+    private static final long NO_PROBE = Long.MIN_VALUE;
+
+    public CircuitBreaker(final double failureRatio, final int minimumCalls, final long windowMillis, final long openMillis) {
+        this(failureRatio, minimumCalls, windowMillis, openMillis, Math.max(openMillis, 60_000));
+    }
+
+    public CircuitBreaker(final double failureRatio, final int minimumCalls, final long windowMillis, final long openMillis,
+                    final long probeTimeoutMillis) {
+        this.failureRatio = failureRatio;
+        this.minimumCalls = Math.max(1, minimumCalls);
+        this.windowNanos = windowMillis * 1_000_000L;
+        this.openNanos = openMillis * 1_000_000L;
+        this.probeTimeoutNanos = Math.max(1, probeTimeoutMillis) * 1_000_000L;
+    }
+
+    /**
+     * @return true if a call may go through now
+     */
+    public boolean allowRequest() {
+        final State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        final long now = System.nanoTime();
+        if (current == State.OPEN && now - openedAt.get() >= openNanos) {
+            state.compareAndSet(State.OPEN, State.HALF_OPEN);
+        }
+        if (state.get() == State.HALF_OPEN) {
+            final long probe = probeStartedAt.get();
+            if (probe == NO_PROBE && probeStartedAt.compareAndSet(NO_PROBE, now)) {
+                return true;
+            }
+            if (probe != NO_PROBE && now - probe >= probeTimeoutNanos && probeStartedAt.compareAndSet(probe, now)) {
+                // The previous probe never reported back
+                return true;
+            }
+        }
+        shortCircuited.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Gives back a call allowed by {@link #allowRequest()} that was not made, e.g. because the
+     * message was rejected before it reached SQS. Lets the next call probe a half-open breaker.
+     */
+    public void release() {
+        if (state.get() == State.HALF_OPEN) {
+            probeStartedAt.set(NO_PROBE);
+        }
+    }
+
+    public void onSuccess() {
+        if (state.get() == State.HALF_OPEN) {
+            resetWindow(System.nanoTime());
+            state.set(State.CLOSED);
+            probeStartedAt.set(NO_PROBE);
+            return;
+        }
+        record(false);
+    }
+
+    public void onFailure() {
+        if (state.get() == State.HALF_OPEN) {
+            open();
+            probeStartedAt.set(NO_PROBE);
+            return;
+        }
+        record(true);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public long getTimesOpened() {
+        return timesOpened.get();
+    }
+
+    public long getShortCircuited() {
+        return shortCircuited.get();
+    }
+
+    private void record(final boolean failure) {
+        final long now = System.nanoTime();
+        final long start = windowStart.get();
+        if (now - start > windowNanos && windowStart.compareAndSet(start, now)) {
+            windowCalls.set(0);
+            windowFailures.set(0);
+        }
+        final long calls = windowCalls.incrementAndGet();
+        final long failures = failure ? windowFailures.incrementAndGet() : windowFailures.get();
+        if (failure && calls >= minimumCalls && (double) failures / calls >= failureRatio) {
+            open();
+        }
+    }
+
+    private void open() {
+        openedAt.set(System.nanoTime());
+        if (state.getAndSet(State.OPEN) != State.OPEN) {
+            timesOpened.incrementAndGet();
+        }
+    }
+
+    private void resetWindow(final long now) {
+        windowStart.set(now);
+        windowCalls.set(0);
+        windowFailures.set(0);
+    }
+}
@@ -0,0 +1,143 @@
+package com.dotcms.plugin.sqs;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.output.StringBuilderWriter;
+
+/**
+ * Writes the fields of a contentlet as a JSON object with Jackson's streaming generator. The
+ * output is written into a per-thread buffer that is reused between messages, so the only
+ * allocation per call is the resulting String.
+ */
+public final class ContentletPayloadSerializer {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /** Buffers that grew past this size are not kept for reuse. */
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private static final ThreadLocal<StringBuilderWriter> BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilderWriter(4096));
+
+    private ContentletPayloadSerializer() {}
+
+    /**
+     * Serializes the given contentlet map as JSON.
+     *
+     * @param fields  the contentlet fields, usually {@code Contentlet.getMap()}
+     * @param include if not empty, only these fields are written
+     * @param exclude fields that are never written
+     * @return the JSON payload
+     * @throws IOException if the generator fails
+     */
+    public static String serialize(final Map<String, Object> fields, final Set<String> include,
+                    final Set<String> exclude) throws IOException {
+        final StringBuilderWriter writer = BUFFER.get();
+        writer.getBuilder().setLength(0);
+        try {
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+                generator.writeStartObject();
+                for (Map.Entry<String, Object> field : fields.entrySet()) {
+                    final String name = field.getKey();
+                    if ((!include.isEmpty() && !include.contains(name)) || exclude.contains(name)) {
+                        continue;
+                    }
+                    generator.writeFieldName(name);
+                    writeValue(generator, field.getValue());
+                }
+                generator.writeEndObject();
+            }
+            return writer.toString();
+        } finally {
+            if (writer.getBuilder().capacity() > MAX_RETAINED_BUFFER) {
+                BUFFER.remove();
+            }
+        }
+    }
+
+    /**
+     * Parses a comma separated list of field names.
+     *
+     * @param value the parameter value, may be null
+     * @return the field names, never null
+     */
+    public static Set<String> parseFieldList(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Writes a single value as JSON, with the same conversions as {@link #serialize}.
+     *
+     * @param writer the target
+     * @param value  the value, may be null
+     * @throws IOException if the generator fails
+     */
+    static void writeJson(final Writer writer, final Object value) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            writeValue(generator, value);
+        }
+    }
+
+    private static void writeValue(final JsonGenerator generator, final Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof CharSequence) {
+            generator.writeString(value.toString());
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            final double number = ((Number) value).doubleValue();
+            if (Double.isFinite(number)) {
+                generator.writeNumber(number);
+            } else {
+                generator.writeString(value.toString());
+            }
+        } else if (value instanceof Number) {
+            generator.writeNumber(value.toString());
+        } else if (value instanceof Date) {
+            generator.writeNumber(((Date) value).getTime());
+        } else if (value instanceof Map) {
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(generator, entry.getValue());
+            }
+            generator.writeEndObject();
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object item : (Collection<?>) value) {
+                writeValue(generator, item);
+            }
+            generator.writeEndArray();
+        } else if (value.getClass().isArray()) {
+            generator.writeStartArray();
+            final int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                writeValue(generator, Array.get(value, i));
+            }
+            generator.writeEndArray();
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+}
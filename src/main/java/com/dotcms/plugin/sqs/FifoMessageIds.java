@@ -0,0 +1,64 @@
+package com.dotcms.plugin.sqs;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+/**
+ * Message group and deduplication ids for FIFO queues. Messages about the same contentlet share a
+ * group, so they are delivered in order while different contentlets are processed in parallel. The
+ * deduplication id identifies one version of a contentlet, so a retried send of that version is
+ * dropped by SQS while a newer version is always delivered.
+ */
+public final class FifoMessageIds {
+
+    /** Longest group or deduplication id SQS accepts. */
+    static final int MAX_ID_LENGTH = 128;
+
+    private FifoMessageIds() {}
+
+    public static boolean isFifoQueue(final String queueUrl) {
+        return queueUrl != null && queueUrl.endsWith(".fifo");
+    }
+
+    /**
+     * @param groupValue the value of the configured group field, may be null
+     * @param identifier the contentlet identifier, used when the group field is empty
+     * @return a valid message group id
+     */
+    public static String groupId(final Object groupValue, final String identifier) {
+        final String value = groupValue != null && !String.valueOf(groupValue).isEmpty() ? String.valueOf(groupValue) : identifier;
+        return toValidId(value != null && !value.isEmpty() ? value : "dotcms");
+    }
+
+    /**
+     * @param identifier the contentlet identifier
+     * @param inode      the inode of the version being sent
+     * @param modDate    the modification date of the version, may be null
+     * @return a valid message deduplication id
+     */
+    public static String deduplicationId(final String identifier, final String inode, final Date modDate) {
+        return toValidId(identifier + ":" + inode + ":" + (modDate != null ? modDate.getTime() : 0));
+    }
+
+    /**
+     * Ids may only contain printable ASCII characters and be at most 128 characters long. Anything
+     * else is replaced by its SHA-256 digest.
+     */
+    static String toValidId(final String value) {
+        if (value.length() <= MAX_ID_LENGTH && value.chars().allMatch(c -> c >= '!' && c <= '~')) {
+            return value;
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.dotcms.plugin.sqs;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+/**
+ * Stores oversize payloads as files in a local directory. Meant for testing and single-node setups
+ * where the consumer can read the same filesystem.
+ */
+public class FileSystemPayloadBlobStore implements PayloadBlobStore {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final Path directory;
+
+    public FileSystemPayloadBlobStore(final String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public String store(final byte[] payload) throws IOException {
+        Files.createDirectories(directory);
+        final Path file = directory.resolve(UUID.randomUUID() + ".payload");
+        Files.write(file, payload);
+
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeStringField("blobStore", getName());
+            generator.writeStringField("path", file.toAbsolutePath().toString());
+            generator.writeNumberField("size", payload.length);
+            generator.writeEndObject();
+        }
+        return writer.toString();
+    }
+}
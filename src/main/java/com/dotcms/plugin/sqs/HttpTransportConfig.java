@@ -0,0 +1,189 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Logger;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Objects;
+
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+
+/**
+ * The HTTP transport and retry settings of the SQS clients, taken from the App. Two configurations
+ * are equal when they would build the same client, so the {@link SqsClientRegistry} uses them as
+ * part of the client key and builds new clients as soon as the settings change.
+ */
+public final class HttpTransportConfig {
+
+    /** The HTTP implementation of the synchronous client. The async client always uses Netty. */
+    public enum HttpClientType {
+        APACHE,
+        URL_CONNECTION;
+
+        public static HttpClientType of(final String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return APACHE;
+            }
+            try {
+                return HttpClientType.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                Logger.warn(HttpClientType.class, "Unknown SQS HTTP client: '" + value + "'. Using apache.");
+                return APACHE;
+            }
+        }
+    }
+
+    private final HttpClientType httpClient;
+    private final int maxConnections;
+    private final Duration connectionTimeout;
+    private final Duration socketTimeout;
+    private final Duration apiCallTimeout;
+    private final Duration apiCallAttemptTimeout;
+    private final boolean tcpKeepAlive;
+    private final RetryMode retryMode;
+    private final int maxAttempts;
+
+    public HttpTransportConfig(final HttpClientType httpClient, final int maxConnections, final Duration connectionTimeout,
+                    final Duration socketTimeout, final Duration apiCallTimeout, final Duration apiCallAttemptTimeout,
+                    final boolean tcpKeepAlive, final RetryMode retryMode, final int maxAttempts) {
+        this.httpClient = httpClient;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.connectionTimeout = connectionTimeout;
+        this.socketTimeout = socketTimeout;
+        this.apiCallTimeout = apiCallTimeout;
+        this.apiCallAttemptTimeout = apiCallAttemptTimeout;
+        this.tcpKeepAlive = tcpKeepAlive;
+        this.retryMode = retryMode;
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * The SDK defaults with the given pool size, used when no App configuration is at hand.
+     */
+    public static HttpTransportConfig defaults(final int maxConnections) {
+        return new HttpTransportConfig(HttpClientType.APACHE, maxConnections,
+                Duration.ofMillis(AppConfig.DEFAULT_CONNECTION_TIMEOUT_MILLIS),
+                Duration.ofMillis(AppConfig.DEFAULT_SOCKET_TIMEOUT_MILLIS),
+                null, null, false, RetryMode.STANDARD, AppConfig.DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public static HttpTransportConfig from(final AppConfig appConfig) {
+        return new HttpTransportConfig(
+                HttpClientType.of(appConfig.httpClient),
+                appConfig.maxConnections,
+                Duration.ofMillis(appConfig.connectionTimeoutMillis),
+                Duration.ofMillis(appConfig.socketTimeoutMillis),
+                appConfig.apiCallTimeoutMillis > 0 ? Duration.ofMillis(appConfig.apiCallTimeoutMillis) : null,
+                appConfig.apiCallAttemptTimeoutMillis > 0 ? Duration.ofMillis(appConfig.apiCallAttemptTimeoutMillis) : null,
+                appConfig.tcpKeepAlive,
+                retryMode(appConfig.retryMode),
+                appConfig.maxAttempts);
+    }
+
+    private static RetryMode retryMode(final String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return RetryMode.STANDARD;
+        }
+        try {
+            return RetryMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            Logger.warn(HttpTransportConfig.class, "Unknown SQS retry mode: '" + value + "'. Using standard.");
+            return RetryMode.STANDARD;
+        }
+    }
+
+    /**
+     * @param connectionMaxIdleTime how long a pooled connection may stay idle
+     * @return the HTTP client builder of the synchronous client
+     */
+    public SdkHttpClient.Builder<?> syncHttpClient(final Duration connectionMaxIdleTime) {
+        if (httpClient == HttpClientType.URL_CONNECTION) {
+            // No connection pool of its own; keep-alive is left to the JDK
+            return UrlConnectionHttpClient.builder()
+                    .connectionTimeout(connectionTimeout)
+                    .socketTimeout(socketTimeout);
+        }
+        return ApacheHttpClient.builder()
+                .maxConnections(maxConnections)
+                .connectionTimeout(connectionTimeout)
+                .socketTimeout(socketTimeout)
+                .tcpKeepAlive(tcpKeepAlive)
+                .connectionMaxIdleTime(connectionMaxIdleTime)
+                .useIdleConnectionReaper(true);
+    }
+
+    /**
+     * @param connectionMaxIdleTime how long a pooled connection may stay idle
+     * @return the HTTP client builder of the asynchronous client
+     */
+    public SdkAsyncHttpClient.Builder<?> asyncHttpClient(final Duration connectionMaxIdleTime) {
+        return NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(maxConnections)
+                .connectionTimeout(connectionTimeout)
+                .readTimeout(socketTimeout)
+                .writeTimeout(socketTimeout)
+                .tcpKeepAlive(tcpKeepAlive)
+                .connectionMaxIdleTime(connectionMaxIdleTime)
+                .useIdleConnectionReaper(true);
+    }
+
+    /**
+     * @return the timeouts and retry policy shared by both clients
+     */
+    public ClientOverrideConfiguration overrideConfiguration() {
+        final ClientOverrideConfiguration.Builder builder = ClientOverrideConfiguration.builder()
+                .retryPolicy(RetryPolicy.forRetryMode(retryMode).toBuilder()
+                        .numRetries(maxAttempts - 1)
+                        .build());
+        if (apiCallTimeout != null) {
+            builder.apiCallTimeout(apiCallTimeout);
+        }
+        if (apiCallAttemptTimeout != null) {
+            builder.apiCallAttemptTimeout(apiCallAttemptTimeout);
+        }
+        return builder.build();
+    }
+
+    public Duration getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HttpTransportConfig)) {
+            return false;
+        }
+        final HttpTransportConfig that = (HttpTransportConfig) o;
+        return maxConnections == that.maxConnections && tcpKeepAlive == that.tcpKeepAlive
+                && maxAttempts == that.maxAttempts && httpClient == that.httpClient
+                && Objects.equals(connectionTimeout, that.connectionTimeout)
+                && Objects.equals(socketTimeout, that.socketTimeout)
+                && Objects.equals(apiCallTimeout, that.apiCallTimeout)
+                && Objects.equals(apiCallAttemptTimeout, that.apiCallAttemptTimeout)
+                && retryMode == that.retryMode;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(httpClient, maxConnections, connectionTimeout, socketTimeout, apiCallTimeout,
+                apiCallAttemptTimeout, tcpKeepAlive, retryMode, maxAttempts);
+    }
+
+    @Override
+    public String toString() {
+        return "httpClient=" + httpClient.name().toLowerCase(Locale.ROOT) + ", maxConnections=" + maxConnections
+                + ", connectionTimeout=" + connectionTimeout + ", socketTimeout=" + socketTimeout
+                + ", apiCallTimeout=" + apiCallTimeout + ", apiCallAttemptTimeout=" + apiCallAttemptTimeout
+                + ", tcpKeepAlive=" + tcpKeepAlive + ", retryMode=" + retryMode + ", maxAttempts=" + maxAttempts;
+    }
+}
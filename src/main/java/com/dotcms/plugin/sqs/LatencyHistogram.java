@@ -0,0 +1,97 @@
+package com.dotcms.plugin.sqs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram in the style of HdrHistogram. Values below 16 get their own bucket;
+ * above that every power of two is split into 8 linear sub-buckets, so any recorded value is reported
+ * within 12.5% of its true value. Recording is a single atomic increment.
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (64 - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public void record(final long value) {
+        final long v = Math.max(0, value);
+        counts.incrementAndGet(indexOf(v));
+        total.increment();
+        sum.add(v);
+    }
+
+    public long getCount() {
+        return total.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public double getMean() {
+        final long count = getCount();
+        return count == 0 ? 0 : (double) getSum() / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket holding the given percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(percentile / 100d * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(BUCKET_COUNT - 1);
+    }
+
+    public Map<String, Object> toMap() {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", getCount());
+        map.put("mean", getMean());
+        map.put("p50", getValueAtPercentile(50));
+        map.put("p90", getValueAtPercentile(90));
+        map.put("p99", getValueAtPercentile(99));
+        map.put("p999", getValueAtPercentile(99.9));
+        map.put("max", getValueAtPercentile(100));
+        return map;
+    }
+
+    static int indexOf(final long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        final int msb = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (msb - 4) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(final int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        final int msb = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        if (msb >= 63) {
+            return Long.MAX_VALUE;
+        }
+        final int sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        final long width = 1L << (msb - SUB_BUCKET_BITS);
+        return (1L << msb) + (sub + 1) * width - 1;
+    }
+}
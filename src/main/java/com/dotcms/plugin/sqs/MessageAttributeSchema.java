@@ -0,0 +1,265 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotcms.api.web.HttpServletRequestThreadLocal;
+import com.dotmarketing.portlets.contentlet.model.Contentlet;
+import com.dotmarketing.portlets.workflows.model.WorkflowProcessor;
+import com.dotmarketing.util.Config;
+import com.dotmarketing.util.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletRequest;
+
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+/**
+ * The message attributes a workflow action attaches to its messages. The actionlet parameter lists
+ * them comma separated as {@code <source>} or {@code <name>=<source>}, where the source is one of
+ * {@code contentType}, {@code site}, {@code language}, {@code action}, {@code user},
+ * {@code identifier}, {@code inode} or {@code field:<variable>}:
+ * <pre>
+ * contentType, site, lang=language, section=field:section
+ * </pre>
+ * The list is parsed once per workflow action into value extractors, so a message only pays for
+ * reading the values. With trace context enabled, every message also carries a W3C
+ * {@code traceparent} and a {@code correlationId}, continued from the current HTTP request when it
+ * has them.
+ */
+public final class MessageAttributeSchema {
+
+    /** Most message attributes SQS accepts on one message. */
+    public static final int MAX_ATTRIBUTES = 10;
+
+    public static final String TRACEPARENT_ATTRIBUTE = "traceparent";
+    public static final String CORRELATION_ID_ATTRIBUTE = "correlationId";
+
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_.-]{1,256}");
+    private static final Pattern TRACEPARENT = Pattern.compile("[0-9a-f]{2}-([0-9a-f]{32})-[0-9a-f]{16}-[0-9a-f]{2}");
+    private static final String[] CORRELATION_HEADERS = {"X-Correlation-ID", "X-Request-ID"};
+
+    private static final MessageAttributeSchema EMPTY = new MessageAttributeSchema("", false, Collections.emptyList());
+    private static final Map<String, MessageAttributeSchema> SCHEMAS = new ConcurrentHashMap<>();
+
+    private final String source;
+    private final boolean traceContext;
+    private final List<Definition> definitions;
+
+    private MessageAttributeSchema(final String source, final boolean traceContext, final List<Definition> definitions) {
+        this.source = source;
+        this.traceContext = traceContext;
+        this.definitions = definitions;
+    }
+
+    /**
+     * The attribute schema of a workflow action, parsed again only when its configuration changes.
+     *
+     * @param actionClassId the workflow action class the configuration belongs to, may be null
+     * @param source        the attribute list
+     * @param traceContext  whether to add the trace context attributes
+     * @return the schema
+     */
+    public static MessageAttributeSchema forAction(final String actionClassId, final String source, final boolean traceContext) {
+        final String value = source != null ? source.trim() : "";
+        if (value.isEmpty() && !traceContext) {
+            return EMPTY;
+        }
+        if (actionClassId == null) {
+            return compile(value, traceContext);
+        }
+        final MessageAttributeSchema cached = SCHEMAS.get(actionClassId);
+        if (cached != null && cached.traceContext == traceContext && cached.source.equals(value)) {
+            return cached;
+        }
+        final MessageAttributeSchema schema = compile(value, traceContext);
+        if (SCHEMAS.size() >= Config.getIntProperty("AWS_SQS_TEMPLATE_CACHE_SIZE", 1000)) {
+            SCHEMAS.clear();
+        }
+        SCHEMAS.put(actionClassId, schema);
+        return schema;
+    }
+
+    static MessageAttributeSchema compile(final String source, final boolean traceContext) {
+        final List<Definition> definitions = new ArrayList<>();
+        for (String item : source.split(",")) {
+            final String entry = item.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            final int separator = entry.indexOf('=');
+            final String from = (separator < 0 ? entry : entry.substring(separator + 1)).trim();
+            final String name = separator < 0 ? from.replaceFirst("^field:", "") : entry.substring(0, separator).trim();
+            if (!VALID_NAME.matcher(name).matches() || name.startsWith("AWS.") || name.startsWith("Amazon.")) {
+                Logger.warn(MessageAttributeSchema.class, "Invalid SQS message attribute name: '" + name + "'. Skipping.");
+                continue;
+            }
+            final Function<Context, Object> extractor = extractor(from);
+            if (extractor == null) {
+                Logger.warn(MessageAttributeSchema.class, "Unknown SQS message attribute source: '" + from + "'. Skipping.");
+                continue;
+            }
+            definitions.add(new Definition(name, extractor));
+        }
+        final int total = definitions.size() + (traceContext ? 2 : 0);
+        if (total > MAX_ATTRIBUTES - 2) {
+            Logger.warn(MessageAttributeSchema.class, total + " SQS message attributes configured. SQS accepts "
+                    + MAX_ATTRIBUTES + " and encoded payloads use up to 2, the last ones may be dropped.");
+        }
+        return new MessageAttributeSchema(source, traceContext, Collections.unmodifiableList(definitions));
+    }
+
+    private static Function<Context, Object> extractor(final String from) {
+        if (from.startsWith("field:") && from.length() > "field:".length()) {
+            final String variable = from.substring("field:".length()).trim();
+            return context -> context.contentlet.getMap().get(variable);
+        }
+        switch (from) {
+            case "contentType":
+                return context -> context.contentlet.getContentType() != null ? context.contentlet.getContentType().variable() : null;
+            case "site":
+            case "host":
+                return context -> context.contentlet.getHost();
+            case "language":
+                return context -> context.contentlet.getLanguageId();
+            case "action":
+                return context -> context.processor.getAction() != null ? context.processor.getAction().getId() : null;
+            case "user":
+                return context -> context.processor.getUser() != null ? context.processor.getUser().getUserId() : null;
+            case "identifier":
+                return context -> context.contentlet.getIdentifier();
+            case "inode":
+                return context -> context.contentlet.getInode();
+            default:
+                return null;
+        }
+    }
+
+    public boolean isEmpty() {
+        return definitions.isEmpty() && !traceContext;
+    }
+
+    /**
+     * Reads the attribute values for one message. Attributes without a value are left out, SQS
+     * does not accept empty ones.
+     *
+     * @param processor the running workflow
+     * @return the attributes in the configured order, trace context first
+     */
+    public Map<String, MessageAttributeValue> extract(final WorkflowProcessor processor) {
+        if (isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, MessageAttributeValue> attributes = new LinkedHashMap<>();
+        if (traceContext) {
+            addTraceContext(attributes);
+        }
+        final Context context = new Context(processor);
+        for (Definition definition : definitions) {
+            try {
+                final Object value = definition.extractor.apply(context);
+                if (value != null && !String.valueOf(value).isEmpty()) {
+                    attributes.put(definition.name, MessageAttributeValue.builder()
+                            .dataType(value instanceof Number ? "Number" : "String")
+                            .stringValue(String.valueOf(value))
+                            .build());
+                }
+            } catch (Exception e) {
+                Logger.warn(this, "Could not read SQS message attribute " + definition.name + ": " + e.getMessage());
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Combines the attributes the payload encoding needs with the configured ones, dropping
+     * configured attributes beyond the SQS limit.
+     *
+     * @param required   the encoding attributes, always kept
+     * @param configured the attributes from {@link #extract}
+     * @return the attributes to send
+     */
+    public static Map<String, MessageAttributeValue> merge(final Map<String, MessageAttributeValue> required,
+                                                          final Map<String, MessageAttributeValue> configured) {
+        if (configured == null || configured.isEmpty()) {
+            return required;
+        }
+        if (required.isEmpty() && configured.size() <= MAX_ATTRIBUTES) {
+            return configured;
+        }
+        final Map<String, MessageAttributeValue> attributes = new LinkedHashMap<>(required);
+        for (Map.Entry<String, MessageAttributeValue> attribute : configured.entrySet()) {
+            if (attributes.size() >= MAX_ATTRIBUTES) {
+                Logger.debug(MessageAttributeSchema.class, "Dropping SQS message attribute " + attribute.getKey() + ", limit of " + MAX_ATTRIBUTES + " reached");
+                continue;
+            }
+            attributes.putIfAbsent(attribute.getKey(), attribute.getValue());
+        }
+        return attributes;
+    }
+
+    /**
+     * Continues the trace of the current HTTP request with a new span, or starts a new trace when
+     * there is no request or it carries no {@code traceparent}.
+     */
+    private static void addTraceContext(final Map<String, MessageAttributeValue> attributes) {
+        final HttpServletRequest request = HttpServletRequestThreadLocal.INSTANCE.getRequest();
+        String traceId = null;
+        String correlationId = null;
+        if (request != null) {
+            final String traceparent = request.getHeader(TRACEPARENT_ATTRIBUTE);
+            if (traceparent != null && TRACEPARENT.matcher(traceparent.trim()).matches()) {
+                traceId = traceparent.trim().substring(3, 35);
+            }
+            for (String header : CORRELATION_HEADERS) {
+                if (correlationId == null && request.getHeader(header) != null && !request.getHeader(header).trim().isEmpty()) {
+                    correlationId = request.getHeader(header).trim();
+                }
+            }
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (traceId == null) {
+            traceId = hex(random.nextLong()) + hex(random.nextLong());
+        }
+        attributes.put(TRACEPARENT_ATTRIBUTE, MessageAttributeValue.builder()
+                .dataType("String")
+                .stringValue("00-" + traceId + "-" + hex(random.nextLong()) + "-01")
+                .build());
+        attributes.put(CORRELATION_ID_ATTRIBUTE, MessageAttributeValue.builder()
+                .dataType("String")
+                .stringValue(correlationId != null ? correlationId : traceId)
+                .build());
+    }
+
+    private static String hex(final long value) {
+        final String hex = Long.toHexString(value);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    private static final class Definition {
+        final String name;
+        final Function<Context, Object> extractor;
+
+        Definition(final String name, final Function<Context, Object> extractor) {
+            this.name = name;
+            this.extractor = extractor;
+        }
+    }
+
+    /** What the extractors read from. */
+    private static final class Context {
+        final WorkflowProcessor processor;
+        final Contentlet contentlet;
+
+        Context(final WorkflowProcessor processor) {
+            this.processor = processor;
+            this.contentlet = processor.getContentlet();
+        }
+    }
+}
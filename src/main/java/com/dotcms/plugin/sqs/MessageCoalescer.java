@@ -0,0 +1,220 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Config;
+import com.dotmarketing.util.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses repeated sends for the same key, e.g. one contentlet on one queue, into a single send
+ * of the newest version. A send is held until no newer version has arrived for the window, but never
+ * longer than the max delay after the first version was held. The number of held keys is bounded;
+ * when it is full the oldest of a small sample of keys is sent early to make room.
+ */
+public class MessageCoalescer {
+
+    /** A send that can be deferred. */
+    public interface Delivery {
+        void deliver() throws Exception;
+    }
+
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxEntries;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService flusher;
+    private volatile boolean running = true;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public MessageCoalescer(final int maxEntries, final Duration maxDelay, final int flushThreads) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dotsqs-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.flusher = Executors.newFixedThreadPool(Math.max(1, flushThreads), r -> {
+            Thread thread = new Thread(r, "dotsqs-coalescer-flush-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a coalescer sized from the dotCMS configuration.
+     *
+     * @return a new coalescer
+     */
+    public static MessageCoalescer fromConfig() {
+        return new MessageCoalescer(
+                Config.getIntProperty("AWS_SQS_COALESCE_MAX_ENTRIES", 10000),
+                Duration.ofMillis(Config.getIntProperty("AWS_SQS_COALESCE_MAX_DELAY_MS", 10000)),
+                Config.getIntProperty("AWS_SQS_COALESCE_FLUSH_THREADS", 2));
+    }
+
+    /**
+     * Holds a send, replacing the one already held for the same key.
+     *
+     * @param key      identifies what the send is about
+     * @param window   how long to wait for a newer version
+     * @param delivery performs the send
+     */
+    public void submit(final String key, final Duration window, final Delivery delivery) {
+        if (!running) {
+            throw new RejectedExecutionException("AWS SQS coalescer is shutting down");
+        }
+        submitted.incrementAndGet();
+        final long now = System.nanoTime();
+        final long windowNanos = Math.min(window.toNanos(), maxDelayNanos);
+        final boolean[] added = new boolean[1];
+        pending.compute(key, (k, current) -> {
+            if (current == null) {
+                added[0] = true;
+                return new Pending(k, delivery, now, now + windowNanos);
+            }
+            superseded.incrementAndGet();
+            current.delivery = delivery;
+            current.dueAt = Math.min(current.heldAt + maxDelayNanos, now + windowNanos);
+            return current;
+        });
+        if (added[0]) {
+            if (size.incrementAndGet() > maxEntries) {
+                evictOldest(key);
+            }
+            try {
+                scheduler.schedule(() -> flushIfDue(key), windowNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // Stopped in the meantime, send it now rather than leaving it behind
+                final Pending held = pending.remove(key);
+                if (held != null) {
+                    size.decrementAndGet();
+                    deliver(held);
+                }
+            }
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        final Map<String, Object> status = new LinkedHashMap<>();
+        status.put("held", size.get());
+        status.put("submitted", submitted.get());
+        status.put("superseded", superseded.get());
+        status.put("delivered", delivered.get());
+        status.put("evicted", evicted.get());
+        status.put("failed", failed.get());
+        return status;
+    }
+
+    /**
+     * Delivers everything that is held right away and stops accepting new sends.
+     *
+     * @param timeout how long to wait for the deliveries
+     */
+    public void shutdown(final Duration timeout) {
+        running = false;
+        scheduler.shutdownNow();
+        for (String key : new ArrayList<>(pending.keySet())) {
+            final Pending held = pending.remove(key);
+            if (held != null) {
+                size.decrementAndGet();
+                deliver(held);
+            }
+        }
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                Logger.warn(this, "AWS SQS coalescer did not deliver every held message in time");
+                flusher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            flusher.shutdownNow();
+        }
+    }
+
+    private void flushIfDue(final String key) {
+        final Pending held = pending.get(key);
+        if (held == null) {
+            return;
+        }
+        final long remaining = held.dueAt - System.nanoTime();
+        if (remaining > 0) {
+            // A newer version arrived within the window; wait for the new due time
+            scheduler.schedule(() -> flushIfDue(key), remaining, TimeUnit.NANOSECONDS);
+            return;
+        }
+        if (pending.remove(key, held)) {
+            size.decrementAndGet();
+            deliver(held);
+        }
+    }
+
+    private void evictOldest(final String justAdded) {
+        Pending oldest = null;
+        final Iterator<Pending> sample = pending.values().iterator();
+        for (int i = 0; i < EVICTION_SAMPLE && sample.hasNext(); i++) {
+            final Pending candidate = sample.next();
+            if (!candidate.key.equals(justAdded) && (oldest == null || candidate.heldAt < oldest.heldAt)) {
+                oldest = candidate;
+            }
+        }
+        if (oldest != null && pending.remove(oldest.key, oldest)) {
+            size.decrementAndGet();
+            evicted.incrementAndGet();
+            deliver(oldest);
+        }
+    }
+
+    private void deliver(final Pending held) {
+        try {
+            flusher.execute(() -> {
+                try {
+                    held.delivery.deliver();
+                    delivered.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    Logger.error(this, "Error delivering coalesced SQS message: " + e.getMessage(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            failed.incrementAndGet();
+            Logger.error(this, "Coalesced SQS message dropped, the coalescer is stopped. Key: " + held.key);
+        }
+    }
+
+    private static final class Pending {
+        final String key;
+        final long heldAt;
+        volatile Delivery delivery;
+        volatile long dueAt;
+
+        Pending(final String key, final Delivery delivery, final long heldAt, final long dueAt) {
+            this.key = key;
+            this.delivery = delivery;
+            this.heldAt = heldAt;
+            this.dueAt = dueAt;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Config;
+import com.dotmarketing.util.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.output.StringBuilderWriter;
+
+/**
+ * A message body with placeholders for contentlet fields. {@code ${title}} inserts the field value
+ * as text, {@code ${title:json}} inserts it as a JSON value: a quoted and escaped string, a number,
+ * a boolean, an object, an array or {@code null}. For example:
+ * <pre>
+ * {"id": ${identifier:json}, "title": ${title:json}, "type": "${contentType}"}
+ * </pre>
+ * {@code $${} writes a literal {@code ${}. A placeholder for a field the contentlet does not have
+ * renders as empty text or {@code null} and is logged once per template and field.
+ * A template is parsed once into its literal and placeholder parts and kept per workflow action
+ * until the action's message body changes. Rendering writes into a per-thread buffer that is reused
+ * between messages.
+ */
+public final class MessageTemplate {
+
+    private static final String JSON_SUFFIX = ":json";
+
+    /** Buffers that grew past this size are not kept for reuse. */
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private static final ThreadLocal<StringBuilderWriter> BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilderWriter(4096));
+
+    private static final Map<String, MessageTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
+    private final String source;
+    private final Segment[] segments;
+    private final boolean placeholders;
+    /** The body when it has no placeholders, with escapes resolved. */
+    private final String literal;
+    private final Set<String> reportedMissing = ConcurrentHashMap.newKeySet();
+
+    private MessageTemplate(final String source, final Segment[] segments) {
+        this.source = source;
+        this.segments = segments;
+        boolean hasField = false;
+        final StringBuilder text = new StringBuilder(source.length());
+        for (Segment segment : segments) {
+            hasField |= segment.field != null;
+            if (segment.field == null) {
+                text.append(segment.text);
+            }
+        }
+        this.placeholders = hasField;
+        this.literal = hasField ? null : text.toString();
+    }
+
+    /**
+     * The compiled message body of a workflow action, compiled again only when the body changes.
+     *
+     * @param actionClassId the workflow action class the body belongs to
+     * @param source        the message body
+     * @return the compiled template
+     */
+    public static MessageTemplate forAction(final String actionClassId, final String source) {
+        if (actionClassId == null) {
+            return compile(source);
+        }
+        final MessageTemplate cached = TEMPLATES.get(actionClassId);
+        if (cached != null && cached.source.equals(source)) {
+            return cached;
+        }
+        final MessageTemplate template = compile(source);
+        if (TEMPLATES.size() >= Config.getIntProperty("AWS_SQS_TEMPLATE_CACHE_SIZE", 1000)) {
+            TEMPLATES.clear();
+        }
+        TEMPLATES.put(actionClassId, template);
+        return template;
+    }
+
+    /**
+     * Parses a message body. Text without a closing brace after {@code ${} is kept as it is, and
+     * {@code $${} is written as {@code ${}.
+     *
+     * @param source the message body
+     * @return the compiled template
+     */
+    public static MessageTemplate compile(final String source) {
+        final List<Segment> segments = new ArrayList<>();
+        int position = 0;
+        int start;
+        while ((start = source.indexOf("${", position)) >= 0) {
+            if (start > position && source.charAt(start - 1) == '$') {
+                segments.add(Segment.text(source.substring(position, start)));
+                position = start + 1;
+                continue;
+            }
+            final int end = source.indexOf('}', start + 2);
+            if (end < 0) {
+                break;
+            }
+            String field = source.substring(start + 2, end).trim();
+            final boolean json = field.endsWith(JSON_SUFFIX);
+            if (json) {
+                field = field.substring(0, field.length() - JSON_SUFFIX.length()).trim();
+            }
+            if (field.isEmpty()) {
+                segments.add(Segment.text(source.substring(position, end + 1)));
+            } else {
+                if (start > position) {
+                    segments.add(Segment.text(source.substring(position, start)));
+                }
+                segments.add(Segment.field(field, json));
+            }
+            position = end + 1;
+        }
+        if (position < source.length() || segments.isEmpty()) {
+            segments.add(Segment.text(source.substring(position)));
+        }
+        return new MessageTemplate(source, segments.toArray(new Segment[0]));
+    }
+
+    /**
+     * @return whether the body contains placeholders; without them it is sent as it is
+     */
+    public boolean hasPlaceholders() {
+        return placeholders;
+    }
+
+    /**
+     * Fills in the placeholders.
+     *
+     * @param fields the contentlet fields, usually {@code Contentlet.getMap()}
+     * @return the message body
+     * @throws IOException if a JSON value cannot be written
+     */
+    public String render(final Map<String, Object> fields) throws IOException {
+        if (!placeholders) {
+            return literal;
+        }
+        final StringBuilderWriter writer = BUFFER.get();
+        final StringBuilder builder = writer.getBuilder();
+        builder.setLength(0);
+        try {
+            for (Segment segment : segments) {
+                if (segment.field == null) {
+                    builder.append(segment.text);
+                } else {
+                    final Object value = fields.get(segment.field);
+                    if (value == null && !fields.containsKey(segment.field) && reportedMissing.add(segment.field)) {
+                        Logger.warn(MessageTemplate.class, "Message template placeholder ${" + segment.field
+                                + "} does not match a contentlet field, it renders as " + (segment.json ? "null" : "empty text"));
+                    }
+                    if (segment.json) {
+                        ContentletPayloadSerializer.writeJson(writer, value);
+                    } else if (value != null) {
+                        builder.append(value);
+                    }
+                }
+            }
+            return builder.toString();
+        } finally {
+            if (builder.capacity() > MAX_RETAINED_BUFFER) {
+                BUFFER.remove();
+            }
+        }
+    }
+
+    private static final class Segment {
+        final String text;
+        final String field;
+        final boolean json;
+
+        private Segment(final String text, final String field, final boolean json) {
+            this.text = text;
+            this.field = field;
+            this.json = json;
+        }
+
+        static Segment text(final String text) {
+            return new Segment(text, null, false);
+        }
+
+        static Segment field(final String field, final boolean json) {
+            return new Segment(null, field, json);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.dotcms.plugin.sqs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+/**
+ * A message waiting in the outbox, stored as one JSON record in the {@link OutboxLog}.
+ */
+public final class OutboxEntry {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public final String region;
+    public final SendMessageRequest request;
+    /** The site whose App configuration sends the message, null for the system host. */
+    public final String hostId;
+
+    public OutboxEntry(final String region, final SendMessageRequest request) {
+        this(region, request, null);
+    }
+
+    public OutboxEntry(final String region, final SendMessageRequest request, final String hostId) {
+        this.region = region;
+        this.request = request;
+        this.hostId = hostId;
+    }
+
+    public byte[] toBytes() throws IOException {
+        final ObjectNode node = MAPPER.createObjectNode();
+        node.put("region", region);
+        if (hostId != null) {
+            node.put("hostId", hostId);
+        }
+        node.put("queueUrl", request.queueUrl());
+        node.put("body", request.messageBody());
+        if (request.delaySeconds() != null) {
+            node.put("delaySeconds", request.delaySeconds());
+        }
+        if (request.messageGroupId() != null) {
+            node.put("messageGroupId", request.messageGroupId());
+        }
+        if (request.messageDeduplicationId() != null) {
+            node.put("messageDeduplicationId", request.messageDeduplicationId());
+        }
+        if (request.hasMessageAttributes()) {
+            final ObjectNode attributes = node.putObject("attributes");
+            request.messageAttributes().forEach((name, value) -> attributes.putObject(name)
+                    .put("dataType", value.dataType())
+                    .put("stringValue", value.stringValue()));
+        }
+        return MAPPER.writeValueAsBytes(node);
+    }
+
+    public static OutboxEntry fromBytes(final byte[] data) throws IOException {
+        final JsonNode node = MAPPER.readTree(data);
+        final SendMessageRequest.Builder builder = SendMessageRequest.builder()
+                .queueUrl(node.path("queueUrl").asText())
+                .messageBody(node.path("body").asText());
+        if (node.has("delaySeconds")) {
+            builder.delaySeconds(node.get("delaySeconds").asInt());
+        }
+        if (node.has("messageGroupId")) {
+            builder.messageGroupId(node.get("messageGroupId").asText());
+        }
+        if (node.has("messageDeduplicationId")) {
+            builder.messageDeduplicationId(node.get("messageDeduplicationId").asText());
+        }
+        if (node.has("attributes")) {
+            final Map<String, MessageAttributeValue> attributes = new HashMap<>();
+            final Iterator<Map.Entry<String, JsonNode>> fields = node.get("attributes").fields();
+            while (fields.hasNext()) {
+                final Map.Entry<String, JsonNode> field = fields.next();
+                attributes.put(field.getKey(), MessageAttributeValue.builder()
+                        .dataType(field.getValue().path("dataType").asText())
+                        .stringValue(field.getValue().path("stringValue").asText())
+                        .build());
+            }
+            builder.messageAttributes(attributes);
+        }
+        return new OutboxEntry(node.path("region").asText(), builder.build(),
+                node.has("hostId") ? node.get("hostId").asText() : null);
+    }
+}
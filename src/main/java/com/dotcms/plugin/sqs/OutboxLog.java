@@ -0,0 +1,357 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segmented record log backing the outbox. Records are written as
+ * {@code [length][crc32][bytes]} and addressed by their global byte offset; each segment file is
+ * named after the offset of its first record. The offset up to which records have been delivered is
+ * kept in a separate commit file, and segments that lie entirely below it are deleted. A torn write at
+ * the tail of the last segment, e.g. after a crash, is truncated when the log is opened. The dead letter
+ * file counts towards the size limit along with the records not yet delivered.
+ */
+public class OutboxLog implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMMIT_FILE = "commit.offset";
+    private static final String DEAD_LETTER_FILE = "dead-letter.jsonl";
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * A record read from the log.
+     */
+    public static final class Record {
+        public final long offset;
+        public final long nextOffset;
+        public final byte[] data;
+
+        Record(final long offset, final long nextOffset, final byte[] data) {
+            this.offset = offset;
+            this.nextOffset = nextOffset;
+            this.data = data;
+        }
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final boolean fsync;
+
+    private final NavigableMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private FileChannel writeChannel;
+    private long writeBase;
+    private volatile long endOffset;
+    private volatile long committedOffset;
+    private volatile long deadLetterBytes;
+
+    public OutboxLog(final Path directory, final long segmentBytes, final long maxBytes, final boolean fsync) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.fsync = fsync;
+        open();
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param data the record bytes
+     * @return the offset of the record
+     * @throws IOException if the record could not be written or the outbox is full
+     */
+    public synchronized long append(final byte[] data) throws IOException {
+        final int recordBytes = HEADER_BYTES + data.length;
+        if (endOffset - committedOffset + deadLetterBytes + recordBytes > maxBytes) {
+            throw new IOException("AWS SQS outbox is full (" + (endOffset - committedOffset) + " bytes pending, "
+                    + deadLetterBytes + " bytes dead-lettered)");
+        }
+        if (writeChannel == null) {
+            throw new IOException("AWS SQS outbox is closed");
+        }
+        if (endOffset > writeBase && endOffset - writeBase + recordBytes > segmentBytes) {
+            roll();
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        final ByteBuffer buffer = ByteBuffer.allocate(recordBytes);
+        buffer.putInt(data.length).putInt((int) crc.getValue()).put(data).flip();
+        while (buffer.hasRemaining()) {
+            writeChannel.write(buffer);
+        }
+        if (fsync) {
+            writeChannel.force(false);
+        }
+
+        final long offset = endOffset;
+        endOffset = offset + recordBytes;
+        return offset;
+    }
+
+    /**
+     * Reads up to {@code maxRecords} records starting at the given offset.
+     *
+     * @param fromOffset the offset of the first record
+     * @param maxRecords the maximum number of records
+     * @return the records, empty if there is nothing to read
+     * @throws IOException if a segment could not be read
+     */
+    public List<Record> read(final long fromOffset, final int maxRecords) throws IOException {
+        final List<Record> records = new ArrayList<>();
+        final long end = endOffset;
+        long offset = fromOffset;
+        while (offset < end && records.size() < maxRecords) {
+            final Map.Entry<Long, Path> segment = segments.floorEntry(offset);
+            if (segment == null) {
+                break;
+            }
+            try (FileChannel channel = FileChannel.open(segment.getValue(), StandardOpenOption.READ)) {
+                long position = offset - segment.getKey();
+                while (offset < end && records.size() < maxRecords && position + HEADER_BYTES <= channel.size()) {
+                    final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                    readFully(channel, header, position);
+                    header.flip();
+                    final int length = header.getInt();
+                    final int checksum = header.getInt();
+                    final ByteBuffer data = ByteBuffer.allocate(length);
+                    readFully(channel, data, position + HEADER_BYTES);
+
+                    final CRC32 crc = new CRC32();
+                    crc.update(data.array());
+                    if ((int) crc.getValue() != checksum) {
+                        throw new IOException("Corrupt outbox record at offset " + offset);
+                    }
+
+                    final long next = offset + HEADER_BYTES + length;
+                    records.add(new Record(offset, next, data.array()));
+                    offset = next;
+                    position += HEADER_BYTES + length;
+                }
+                if (position + HEADER_BYTES > channel.size() && segments.higherKey(segment.getKey()) == null) {
+                    break;
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Marks every record below the given offset as delivered and deletes the segments no longer needed.
+     *
+     * @param offset the offset of the first record not yet delivered
+     * @throws IOException if the commit file could not be written
+     */
+    public synchronized void commit(final long offset) throws IOException {
+        final Path tmp = directory.resolve(COMMIT_FILE + ".tmp");
+        Files.write(tmp, String.valueOf(offset).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, directory.resolve(COMMIT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committedOffset = offset;
+
+        for (Long base : new ArrayList<>(segments.headMap(writeBase, false).keySet())) {
+            final Long nextBase = segments.higherKey(base);
+            if (nextBase != null && nextBase <= offset) {
+                Files.deleteIfExists(segments.remove(base));
+            }
+        }
+    }
+
+    /**
+     * Moves a record that could not be delivered to the dead letter file.
+     *
+     * @param data the record bytes
+     * @throws IOException if the dead letter file could not be written
+     */
+    public synchronized void deadLetter(final byte[] data) throws IOException {
+        final byte[] line = (new String(data, StandardCharsets.UTF_8) + "\n").getBytes(StandardCharsets.UTF_8);
+        Files.write(directory.resolve(DEAD_LETTER_FILE), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        deadLetterBytes += line.length;
+    }
+
+    /**
+     * Appends the dead-lettered records back to the log, oldest first. The dead letter file is only
+     * rewritten afterwards, so the records not appended, e.g. because the log filled up, stay in it.
+     *
+     * @return the number of records appended
+     * @throws IOException if a record could not be appended or the dead letter file could not be rewritten
+     */
+    public synchronized int replayDeadLetters() throws IOException {
+        final Path file = directory.resolve(DEAD_LETTER_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        final List<String> letters = Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.trim().isEmpty())
+                .collect(Collectors.toList());
+        int replayed = 0;
+        try {
+            for (String letter : letters) {
+                final byte[] data = letter.getBytes(StandardCharsets.UTF_8);
+                // The letter leaves the dead letter file, so it only takes up room once
+                deadLetterBytes -= data.length + 1;
+                append(data);
+                replayed++;
+            }
+        } finally {
+            rewriteDeadLetters(file, letters.subList(replayed, letters.size()));
+        }
+        return replayed;
+    }
+
+    public synchronized long countDeadLetters() throws IOException {
+        final Path file = directory.resolve(DEAD_LETTER_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            return lines.filter(line -> !line.trim().isEmpty()).count();
+        }
+    }
+
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    public long getPendingBytes() {
+        return endOffset - committedOffset;
+    }
+
+    public long getDeadLetterBytes() {
+        return deadLetterBytes;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writeChannel != null) {
+            writeChannel.force(true);
+            writeChannel.close();
+            writeChannel = null;
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(file -> segments.put(baseOf(file), file));
+        }
+
+        final Path commitFile = directory.resolve(COMMIT_FILE);
+        long committed = segments.isEmpty() ? 0 : segments.firstKey();
+        if (Files.exists(commitFile)) {
+            committed = Long.parseLong(new String(Files.readAllBytes(commitFile), StandardCharsets.UTF_8).trim());
+        }
+
+        if (segments.isEmpty()) {
+            writeBase = committed;
+            segments.put(writeBase, segmentPath(writeBase));
+        } else {
+            writeBase = segments.lastKey();
+        }
+        writeChannel = FileChannel.open(segments.get(writeBase), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+        final long validBytes = recoverTail(writeChannel);
+        writeChannel.truncate(validBytes);
+        writeChannel.position(validBytes);
+        endOffset = writeBase + validBytes;
+        committedOffset = Math.max(segments.firstKey(), Math.min(committed, endOffset));
+        final Path deadLetters = directory.resolve(DEAD_LETTER_FILE);
+        deadLetterBytes = Files.exists(deadLetters) ? Files.size(deadLetters) : 0;
+
+        Logger.info(this, "Opened AWS SQS outbox at " + directory + ", pending bytes: " + getPendingBytes());
+    }
+
+    private long recoverTail(final FileChannel channel) throws IOException {
+        long position = 0;
+        final long size = channel.size();
+        while (position + HEADER_BYTES <= size) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, position);
+            header.flip();
+            final int length = header.getInt();
+            final int checksum = header.getInt();
+            if (length < 0 || position + HEADER_BYTES + length > size) {
+                break;
+            }
+            final ByteBuffer data = ByteBuffer.allocate(length);
+            readFully(channel, data, position + HEADER_BYTES);
+            final CRC32 crc = new CRC32();
+            crc.update(data.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+        }
+        if (position < size) {
+            Logger.warn(this, "Truncating " + (size - position) + " bytes of incomplete outbox records");
+        }
+        return position;
+    }
+
+    private void rewriteDeadLetters(final Path file, final List<String> letters) throws IOException {
+        if (letters.isEmpty()) {
+            Files.deleteIfExists(file);
+        } else {
+            final Path tmp = directory.resolve(DEAD_LETTER_FILE + ".tmp");
+            Files.write(tmp, letters, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        deadLetterBytes = Files.exists(file) ? Files.size(file) : 0;
+    }
+
+    private void roll() throws IOException {
+        writeChannel.force(true);
+        writeChannel.close();
+        writeBase = endOffset;
+        final Path segment = segmentPath(writeBase);
+        segments.put(writeBase, segment);
+        writeChannel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(final long base) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_SUFFIX));
+    }
+
+    private static long baseOf(final Path segment) {
+        final String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, current);
+            if (read < 0) {
+                throw new IOException("Unexpected end of outbox segment");
+            }
+            current += read;
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Config;
+import com.dotmarketing.util.ConfigUtils;
+import com.dotmarketing.util.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+/**
+ * Drains the {@link OutboxLog} to SQS on a background thread. Records are read in windows of up to
+ * ten, sent with {@code SendMessageBatch} per queue and split so no call exceeds the batch size limit,
+ * and the commit offset only moves past a window once every record in it has been acknowledged.
+ * Records held back by an open breaker or the rate limit, or failed by a throttle, a 5xx or a network
+ * error, are retried with exponential backoff for as long as it takes, so an SQS outage only delays the
+ * outbox. Records SQS rejects as invalid are moved to the dead letter file at once, and records whose
+ * call keeps failing for any other reason, e.g. a missing queue or denied access, after the configured
+ * number of attempts. Because the commit offset is persisted, a restarted bundle resumes where the
+ * previous one stopped.
+ */
+public class OutboxRelay {
+
+    private static final int WINDOW_SIZE = SqsBatchDispatcher.MAX_BATCH_ENTRIES;
+
+    private final OutboxLog log;
+    private final SendGuardRegistry sendGuards;
+    private final Function<String, AppConfig> appConfigs;
+    private final BiFunction<AppConfig, Region, SqsClient> clients;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Object signal = new Object();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private final AtomicLong relayed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+
+    public OutboxRelay(final OutboxLog log, final SendGuardRegistry sendGuards, final int maxAttempts, final Duration baseBackoff, final Duration maxBackoff) {
+        this(log, sendGuards, maxAttempts, baseBackoff, maxBackoff, hostId -> SqsServices.appConfigCache().get(hostId),
+                (appConfig, region) -> SqsServices.clientRegistry().getClient(region, appConfig, null));
+    }
+
+    /**
+     * @param appConfigs returns the App configuration of the site of a message, for its client and send rate
+     * @param clients    returns the client for the App configuration and region of a message, e.g. a fixed client outside of dotCMS
+     */
+    public OutboxRelay(final OutboxLog log, final SendGuardRegistry sendGuards, final int maxAttempts, final Duration baseBackoff,
+                    final Duration maxBackoff, final Function<String, AppConfig> appConfigs,
+                    final BiFunction<AppConfig, Region, SqsClient> clients) {
+        this.log = log;
+        this.sendGuards = sendGuards;
+        this.appConfigs = appConfigs;
+        this.clients = clients;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMillis = baseBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        this.thread = new Thread(this::relayLoop, "dotsqs-outbox-relay");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Opens the outbox configured in dotCMS and starts relaying it.
+     *
+     * @param sendGuards the per-queue and per-site guards consulted before each batch call
+     * @return a running relay
+     * @throws IOException if the outbox could not be opened
+     */
+    public static OutboxRelay fromConfig(final SendGuardRegistry sendGuards) throws IOException {
+        final String directory = Config.getStringProperty("AWS_SQS_OUTBOX_DIR",
+                ConfigUtils.getDynamicContentPath() + File.separator + "dotsqs-outbox");
+        final OutboxLog log = new OutboxLog(Paths.get(directory),
+                Config.getIntProperty("AWS_SQS_OUTBOX_SEGMENT_MB", 16) * 1024L * 1024L,
+                Config.getIntProperty("AWS_SQS_OUTBOX_MAX_MB", 512) * 1024L * 1024L,
+                Config.getBooleanProperty("AWS_SQS_OUTBOX_FSYNC", true));
+        return new OutboxRelay(log, sendGuards,
+                Config.getIntProperty("AWS_SQS_OUTBOX_MAX_ATTEMPTS", 10),
+                Duration.ofMillis(Config.getIntProperty("AWS_SQS_OUTBOX_BACKOFF_MS", 200)),
+                Duration.ofMillis(Config.getIntProperty("AWS_SQS_OUTBOX_MAX_BACKOFF_MS", 60000)));
+    }
+
+    /**
+     * Appends a message to the outbox. Called on the workflow thread.
+     *
+     * @param entry the message
+     * @throws IOException if the outbox is full or could not be written
+     */
+    public void append(final OutboxEntry entry) throws IOException {
+        log.append(entry.toBytes());
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    /**
+     * Appends every dead-lettered message back to the outbox.
+     *
+     * @return the number of messages replayed
+     * @throws IOException if the outbox could not be written; the messages not replayed stay dead-lettered
+     */
+    public int replayDeadLetters() throws IOException {
+        final int replayed = log.replayDeadLetters();
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        Logger.info(this, "Replayed " + replayed + " dead-lettered outbox messages");
+        return replayed;
+    }
+
+    public Map<String, Object> getStatus() {
+        final Map<String, Object> status = new LinkedHashMap<>();
+        status.put("pendingBytes", log.getPendingBytes());
+        status.put("committedOffset", log.getCommittedOffset());
+        status.put("endOffset", log.getEndOffset());
+        status.put("segments", log.getSegmentCount());
+        status.put("relayed", relayed.get());
+        status.put("retried", retried.get());
+        status.put("deadLettered", deadLettered.get());
+        status.put("deadLetterBytes", log.getDeadLetterBytes());
+        try {
+            status.put("deadLetters", log.countDeadLetters());
+        } catch (IOException e) {
+            status.put("deadLetters", -1);
+        }
+        return status;
+    }
+
+    /**
+     * Stops the relay thread and closes the log. Anything not yet committed is sent after the next start.
+     *
+     * @param timeout how long to wait for the current window
+     */
+    public void shutdown(final Duration timeout) {
+        running = false;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        try {
+            thread.join(timeout.toMillis());
+            if (thread.isAlive()) {
+                thread.interrupt();
+                thread.join(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            Logger.warn(this, "Error closing AWS SQS outbox: " + e.getMessage());
+        }
+    }
+
+    private void relayLoop() {
+        while (running) {
+            try {
+                final List<OutboxLog.Record> window = log.read(log.getCommittedOffset(), WINDOW_SIZE);
+                if (window.isEmpty()) {
+                    synchronized (signal) {
+                        signal.wait(500);
+                    }
+                    continue;
+                }
+                if (deliver(window)) {
+                    log.commit(window.get(window.size() - 1).nextOffset);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                Logger.error(this, "Error relaying AWS SQS outbox: " + e.getMessage(), e);
+                sleepQuietly(baseBackoffMillis);
+            }
+        }
+    }
+
+    /**
+     * Sends a window until every record has been acknowledged or dead-lettered. Like the batch
+     * dispatcher, each round sends at most one record per FIFO message group, so a group's records
+     * reach SQS in order: the rest of the group waits for the one in flight, and when that one is
+     * dead-lettered the rest of the group follows it.
+     *
+     * @return false if the relay was stopped before the window completed
+     */
+    private boolean deliver(final List<OutboxLog.Record> window) throws IOException, InterruptedException {
+        final List<PendingRecord> pending = new ArrayList<>();
+        for (OutboxLog.Record record : window) {
+            try {
+                pending.add(new PendingRecord(record, OutboxEntry.fromBytes(record.data)));
+            } catch (Exception e) {
+                Logger.error(this, "Unreadable outbox record at offset " + record.offset + ", moving it to the dead letter file");
+                log.deadLetter(record.data);
+                deadLettered.incrementAndGet();
+            }
+        }
+
+        int round = 0;
+        while (!pending.isEmpty()) {
+            if (!running) {
+                return false;
+            }
+            final List<PendingRecord> ready = new ArrayList<>();
+            final List<PendingRecord> held = new ArrayList<>();
+            final Set<String> sending = new HashSet<>();
+            for (PendingRecord record : pending) {
+                final String group = groupOf(record);
+                if (group == null || sending.add(group)) {
+                    ready.add(record);
+                } else {
+                    held.add(record);
+                }
+            }
+
+            final List<PendingRecord> rejected = new ArrayList<>();
+            final List<PendingRecord> failed = send(ready, rejected);
+            relayed.addAndGet(ready.size() - failed.size() - rejected.size());
+            final Set<String> lostGroups = new HashSet<>();
+            for (PendingRecord record : rejected) {
+                // Retrying a message SQS considers invalid only holds up the rest of the outbox
+                deadLetter(record, lostGroups);
+            }
+            pending.clear();
+            for (PendingRecord record : failed) {
+                if (record.attempts >= maxAttempts) {
+                    Logger.error(this, "Giving up on outbox message for queue " + record.entry.request.queueUrl()
+                            + " after " + record.attempts + " attempts, moving it to the dead letter file");
+                    deadLetter(record, lostGroups);
+                } else {
+                    pending.add(record);
+                }
+            }
+            final int retrying = pending.size();
+            for (PendingRecord record : held) {
+                if (lostGroups.contains(groupOf(record))) {
+                    // Sending it now would put it ahead of the dead-lettered message of its group
+                    Logger.error(this, "Outbox message for queue " + record.entry.request.queueUrl() + " follows a dead-lettered"
+                            + " message of FIFO group " + record.entry.request.messageGroupId() + ", moving it to the dead letter file");
+                    deadLetter(record, lostGroups);
+                } else {
+                    pending.add(record);
+                }
+            }
+            pending.sort(Comparator.comparingLong(record -> record.record.offset));
+
+            if (retrying > 0) {
+                round++;
+                retried.addAndGet(retrying);
+                Thread.sleep(Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(round - 1, 20)));
+            }
+        }
+        return true;
+    }
+
+    private void deadLetter(final PendingRecord record, final Set<String> lostGroups) throws IOException {
+        log.deadLetter(record.record.data);
+        deadLettered.incrementAndGet();
+        final String group = groupOf(record);
+        if (group != null) {
+            lostGroups.add(group);
+        }
+    }
+
+    /**
+     * @return the queue and FIFO message group of a record, or null if it has no group
+     */
+    private static String groupOf(final PendingRecord record) {
+        final SendMessageRequest request = record.entry.request;
+        if (request.messageGroupId() == null) {
+            return null;
+        }
+        return record.entry.region + "|" + request.queueUrl() + "|" + request.messageGroupId();
+    }
+
+    /**
+     * Sends the records with one batch call per queue and size limit.
+     *
+     * @param records  the records to send
+     * @param rejected receives the records SQS rejected as the sender's fault
+     * @return the records to retry, with {@link PendingRecord#attempts} counting the failures that are not transient
+     */
+    private List<PendingRecord> send(final List<PendingRecord> records, final List<PendingRecord> rejected) {
+        final Map<String, List<PendingRecord>> byQueue = new LinkedHashMap<>();
+        for (PendingRecord record : records) {
+            byQueue.computeIfAbsent(record.entry.hostId + "|" + record.entry.region + "|" + record.entry.request.queueUrl(),
+                    k -> new ArrayList<>()).add(record);
+        }
+
+        final List<PendingRecord> failed = new ArrayList<>();
+        for (List<PendingRecord> queueRecords : byQueue.values()) {
+            // At most one record per FIFO group gets here, so the batches keep each group in order
+            for (List<PendingRecord> group : batchesOf(queueRecords)) {
+                sendBatch(group, failed, rejected);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Splits the records of one queue, in order, into batches within {@link SqsBatchDispatcher#MAX_BATCH_BYTES}.
+     */
+    private static List<List<PendingRecord>> batchesOf(final List<PendingRecord> records) {
+        final List<List<PendingRecord>> batches = new ArrayList<>();
+        List<PendingRecord> batch = new ArrayList<>();
+        int batchBytes = 0;
+        for (PendingRecord record : records) {
+            final int size = SqsBatchDispatcher.payloadSize(record.entry.request);
+            if (!batch.isEmpty() && batchBytes + size > SqsBatchDispatcher.MAX_BATCH_BYTES) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(record);
+            batchBytes += size;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private void sendBatch(final List<PendingRecord> group, final List<PendingRecord> failed,
+                    final List<PendingRecord> rejected) {
+        final OutboxEntry first = group.get(0).entry;
+        final AppConfig appConfig;
+        try {
+            appConfig = appConfigs.apply(first.hostId);
+        } catch (Exception e) {
+            Logger.warn(this, "Error reading the AWS SQS App of site " + first.hostId + ": " + e.getMessage()
+                    + ". Queue: " + first.request.queueUrl());
+            group.forEach(record -> record.attempts++);
+            failed.addAll(group);
+            return;
+        }
+        final SendGuard guard = sendGuards.forQueue(first.request.queueUrl());
+        final AdaptiveRateLimiter tenantLimiter = sendGuards.forTenant(appConfig.hostId, appConfig.maxSendRate);
+        if (guard.acquire(tenantLimiter) != SendGuard.Permit.GRANTED) {
+            // Leave the queue alone while its breaker is open or its or the site's rate is exceeded, the backoff retries later
+            failed.addAll(group);
+            return;
+        }
+        // The site's rate counts messages and the permit only took a slot for the first one
+        for (int i = 1; tenantLimiter != null && i < group.size(); i++) {
+            sleepNanos(tenantLimiter.reserve(Long.MAX_VALUE));
+        }
+        final long start = System.nanoTime();
+        try {
+            final SqsClient client = clients.apply(appConfig, Region.of(first.region));
+
+            final List<SendMessageBatchRequestEntry> entries = new ArrayList<>(group.size());
+            for (int i = 0; i < group.size(); i++) {
+                final SendMessageRequest request = group.get(i).entry.request;
+                entries.add(SendMessageBatchRequestEntry.builder()
+                        .id(String.valueOf(i))
+                        .messageBody(request.messageBody())
+                        .delaySeconds(request.delaySeconds())
+                        .messageAttributes(request.messageAttributes())
+                        .messageGroupId(request.messageGroupId())
+                        .messageDeduplicationId(request.messageDeduplicationId())
+                        .build());
+            }
+            final SendMessageBatchResponse response = client.sendMessageBatch(SendMessageBatchRequest.builder()
+                    .queueUrl(first.request.queueUrl())
+                    .entries(entries)
+                    .build());
+            guard.onSuccess(start, response.successful().size());
+            for (BatchResultErrorEntry error : response.failed()) {
+                final PendingRecord record = group.get(Integer.parseInt(error.id()));
+                if (Boolean.TRUE.equals(error.senderFault())) {
+                    Logger.error(this, "Outbox message rejected by SQS: " + error.code() + " " + error.message()
+                            + ". Queue: " + first.request.queueUrl() + ", moving it to the dead letter file");
+                    rejected.add(record);
+                } else {
+                    Logger.warn(this, "Outbox message rejected by SQS: " + error.code() + " " + error.message()
+                            + ". Queue: " + first.request.queueUrl());
+                    failed.add(record);
+                }
+            }
+        } catch (Exception e) {
+            guard.onFailure(e, start, group.size());
+            Logger.warn(this, "Error relaying outbox messages to SQS: " + e.getMessage() + ". Queue: " + first.request.queueUrl());
+            if (!SqsMessageSender.isEndpointFailure(e)) {
+                // Throttles, 5xx and network errors pass, anything else will not fix itself
+                group.forEach(record -> record.attempts++);
+            }
+            failed.addAll(group);
+        }
+    }
+
+    private static void sleepNanos(final long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class PendingRecord {
+        final OutboxLog.Record record;
+        final OutboxEntry entry;
+        int attempts;
+
+        PendingRecord(final OutboxLog.Record record, final OutboxEntry entry) {
+            this.record = record;
+            this.entry = entry;
+        }
+    }
+}
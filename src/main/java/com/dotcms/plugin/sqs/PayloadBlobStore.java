@@ -0,0 +1,28 @@
+package com.dotcms.plugin.sqs;
+
+import java.io.IOException;
+
+/**
+ * Stores message bodies that are too large for SQS and returns the pointer message sent in their place.
+ */
+public interface PayloadBlobStore {
+
+    /**
+     * @return the name written to the encoding message attribute, e.g. {@code s3}
+     */
+    String getName();
+
+    /**
+     * Stores the payload.
+     *
+     * @param payload the original message body
+     * @return the pointer message body consumers use to fetch the payload
+     * @throws IOException if the payload could not be stored
+     */
+    String store(byte[] payload) throws IOException;
+
+    /**
+     * Releases any client held by the store.
+     */
+    default void close() {}
+}
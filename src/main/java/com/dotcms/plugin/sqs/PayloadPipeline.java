@@ -0,0 +1,211 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+
+/**
+ * Encodes message bodies before they are sent. Bodies above the configured threshold are gzipped
+ * and base64 encoded; bodies that are still too large for SQS are written to a {@link PayloadBlobStore}
+ * and replaced by a pointer message. The {@value #ENCODING_ATTRIBUTE} message attribute tells
+ * consumers how to decode the body.
+ */
+public class PayloadPipeline {
+
+    /** SQS rejects messages larger than 256 KB, body and attributes included. */
+    public static final int SQS_MAX_MESSAGE_BYTES = 256 * 1024;
+
+    /** Room kept for message attributes when deciding whether a body fits. */
+    static final int ATTRIBUTE_ALLOWANCE_BYTES = 4 * 1024;
+
+    public static final String ENCODING_ATTRIBUTE = "dotsqs-encoding";
+    public static final String ENCODING_GZIP = "gzip+base64";
+
+    /** Attribute set by the SQS Extended Client Library on offloaded messages. */
+    public static final String EXTENDED_PAYLOAD_SIZE_ATTRIBUTE = "ExtendedPayloadSize";
+
+    private final Map<String, PayloadBlobStore> blobStores = new ConcurrentHashMap<>();
+    private final Duration closeGracePeriod;
+    private final ScheduledExecutorService closer;
+
+    private final AtomicLong compressedMessages = new AtomicLong();
+    private final AtomicLong bytesBeforeCompression = new AtomicLong();
+    private final AtomicLong bytesAfterCompression = new AtomicLong();
+    private final AtomicLong offloadedMessages = new AtomicLong();
+
+    public PayloadPipeline() {
+        this(Duration.ofSeconds(60));
+    }
+
+    /**
+     * @param closeGracePeriod how long a blob store retired by {@link #reset()} stays open for the
+     *                         messages still being encoded with it
+     */
+    public PayloadPipeline(final Duration closeGracePeriod) {
+        this.closeGracePeriod = closeGracePeriod;
+        this.closer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dotsqs-blob-store-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The encoded body and the attributes describing its encoding.
+     */
+    public static final class EncodedPayload {
+        public final String body;
+        public final Map<String, MessageAttributeValue> attributes;
+
+        EncodedPayload(final String body, final Map<String, MessageAttributeValue> attributes) {
+            this.body = body;
+            this.attributes = attributes;
+        }
+    }
+
+    /**
+     * Encodes a message body according to the App configuration.
+     *
+     * @param body      the message body
+     * @param appConfig supplies the compression threshold and blob store settings
+     * @param region    the region of the queue, used for the S3 blob store
+     * @return the body to send
+     * @throws IOException if the body needs to be offloaded and the blob store fails
+     */
+    public EncodedPayload encode(final String body, final AppConfig appConfig, final Region region) throws IOException {
+        final byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+        final int limit = SQS_MAX_MESSAGE_BYTES - ATTRIBUTE_ALLOWANCE_BYTES;
+
+        if (appConfig.compressionThresholdBytes >= 0 && raw.length > appConfig.compressionThresholdBytes) {
+            final String compressed = Base64.getEncoder().encodeToString(gzip(raw));
+            if (compressed.length() < raw.length) {
+                compressedMessages.incrementAndGet();
+                bytesBeforeCompression.addAndGet(raw.length);
+                bytesAfterCompression.addAndGet(compressed.length());
+
+                if (compressed.length() <= limit) {
+                    return new EncodedPayload(compressed, encodingAttribute(ENCODING_GZIP));
+                }
+            }
+        }
+
+        if (raw.length <= limit) {
+            return new EncodedPayload(body, Collections.emptyMap());
+        }
+
+        final PayloadBlobStore blobStore = getBlobStore(appConfig, region);
+        if (blobStore == null) {
+            // Nothing configured, let SQS reject it as before
+            return new EncodedPayload(body, Collections.emptyMap());
+        }
+
+        final String pointer = blobStore.store(raw);
+        offloadedMessages.incrementAndGet();
+        Logger.debug(this, "Offloaded " + raw.length + " byte SQS payload to blob store: " + blobStore.getName());
+
+        final Map<String, MessageAttributeValue> attributes = new HashMap<>(encodingAttribute(blobStore.getName() + "-pointer"));
+        attributes.put(EXTENDED_PAYLOAD_SIZE_ATTRIBUTE, MessageAttributeValue.builder()
+                .dataType("Number")
+                .stringValue(String.valueOf(raw.length))
+                .build());
+        return new EncodedPayload(pointer, attributes);
+    }
+
+    public long getCompressedMessages() {
+        return compressedMessages.get();
+    }
+
+    public long getOffloadedMessages() {
+        return offloadedMessages.get();
+    }
+
+    /**
+     * @return compressed size divided by original size over all compressed messages, or 1 if none
+     */
+    public double getCompressionRatio() {
+        final long before = bytesBeforeCompression.get();
+        return before == 0 ? 1d : (double) bytesAfterCompression.get() / before;
+    }
+
+    /**
+     * Retires the blob stores so they are rebuilt with the current App configuration. A retired
+     * store is closed after the grace period, so an encode that already picked it up can finish.
+     */
+    public void reset() {
+        for (String key : blobStores.keySet()) {
+            final PayloadBlobStore blobStore = blobStores.remove(key);
+            if (blobStore == null) {
+                continue;
+            }
+            try {
+                closer.schedule(blobStore::close, closeGracePeriod.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // closer already shut down
+                blobStore.close();
+            }
+        }
+    }
+
+    /**
+     * Closes every blob store, including the retired ones still in their grace period.
+     */
+    public void shutdown() {
+        closer.shutdownNow().forEach(Runnable::run);
+        blobStores.values().forEach(PayloadBlobStore::close);
+        blobStores.clear();
+    }
+
+    private PayloadBlobStore getBlobStore(final AppConfig appConfig, final Region region) {
+        final String type = appConfig.offloadStore != null ? appConfig.offloadStore.trim().toLowerCase() : "none";
+        if ("none".equals(type) || type.isEmpty()) {
+            return null;
+        }
+        if (appConfig.offloadLocation == null || appConfig.offloadLocation.trim().isEmpty()) {
+            Logger.warn(this, "Payload offload store '" + type + "' has no location configured");
+            return null;
+        }
+        final String location = appConfig.offloadLocation.trim();
+        return blobStores.computeIfAbsent(type + "|" + location + "|" + region.id() + "|" + appConfig.credentialMode
+                + "|" + appConfig.awsAccessKey + "|" + appConfig.roleArn, key -> {
+            switch (type) {
+                case "s3":
+                    return new S3PayloadBlobStore(location, region, appConfig);
+                case "file":
+                    return new FileSystemPayloadBlobStore(location);
+                default:
+                    throw new IllegalStateException("Unknown payload offload store: " + type);
+            }
+        });
+    }
+
+    private static Map<String, MessageAttributeValue> encodingAttribute(final String encoding) {
+        return Collections.singletonMap(ENCODING_ATTRIBUTE, MessageAttributeValue.builder()
+                .dataType("String")
+                .stringValue(encoding)
+                .build());
+    }
+
+    private static byte[] gzip(final byte[] raw) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(raw);
+        }
+        return out.toByteArray();
+    }
+}
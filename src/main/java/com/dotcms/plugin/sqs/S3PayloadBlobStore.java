@@ -0,0 +1,80 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Logger;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.UUID;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Stores oversize payloads in an S3 bucket. The pointer message uses the same format as the
+ * Amazon SQS Extended Client Library, so consumers using that library can resolve it as is.
+ */
+public class S3PayloadBlobStore implements PayloadBlobStore {
+
+    static final String POINTER_CLASS = "software.amazon.payloadoffloading.PayloadS3Pointer";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String bucketName;
+    private final AwsCredentialsProvider credentials;
+    private final S3Client s3Client;
+
+    public S3PayloadBlobStore(final String bucketName, final Region region, final AppConfig appConfig) {
+        this.bucketName = bucketName;
+        this.credentials = AwsCredentialsConfig.from(appConfig).provider(region);
+        this.s3Client = S3Client.builder()
+                .region(region)
+                .credentialsProvider(credentials)
+                // Several HTTP implementations are bundled, the SDK will not pick one by itself
+                .httpClientBuilder(ApacheHttpClient.builder())
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return "s3";
+    }
+
+    @Override
+    public String store(final byte[] payload) throws IOException {
+        final String key = UUID.randomUUID().toString();
+        try {
+            s3Client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+                    RequestBody.fromBytes(payload));
+        } catch (Exception e) {
+            throw new IOException("Unable to store SQS payload in S3 bucket " + bucketName + ": " + e.getMessage(), e);
+        }
+
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.writeStartArray();
+            generator.writeString(POINTER_CLASS);
+            generator.writeStartObject();
+            generator.writeStringField("s3BucketName", bucketName);
+            generator.writeStringField("s3Key", key);
+            generator.writeEndObject();
+            generator.writeEndArray();
+        }
+        return writer.toString();
+    }
+
+    @Override
+    public void close() {
+        try {
+            s3Client.close();
+        } catch (Exception e) {
+            Logger.warn(this, "Error closing S3 client: " + e.getMessage());
+        }
+        AwsCredentialsConfig.closeQuietly(credentials);
+    }
+}
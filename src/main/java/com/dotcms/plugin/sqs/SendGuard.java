@@ -0,0 +1,181 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+/**
+ * Rate limiter and circuit breaker in front of the sends to one queue URL. Throttling responses
+ * slow the rate limiter down; other failures count towards opening the breaker.
+ */
+public class SendGuard {
+
+    /**
+     * Outcome of {@link #acquire()}.
+     */
+    public enum Permit {
+        GRANTED, RATE_LIMITED, CIRCUIT_OPEN
+    }
+
+    private final String queueUrl;
+    private final AdaptiveRateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final SqsMetrics.QueueMetrics metrics;
+    private final long maxWaitNanos;
+
+    public SendGuard(final String queueUrl, final AdaptiveRateLimiter rateLimiter, final CircuitBreaker circuitBreaker,
+                    final SqsMetrics.QueueMetrics metrics, final long maxWaitMillis) {
+        this.queueUrl = queueUrl;
+        this.metrics = metrics;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreaker = circuitBreaker;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Creates a guard for the given queue sized from the dotCMS configuration.
+     *
+     * @param queueUrl the queue URL
+     * @param metrics  the metrics the outcomes are recorded in
+     * @return a new guard
+     */
+    public static SendGuard fromConfig(final String queueUrl, final SqsMetrics.QueueMetrics metrics) {
+        return new SendGuard(queueUrl,
+                new AdaptiveRateLimiter(
+                        Config.getIntProperty("AWS_SQS_RATE_LIMIT_PER_SECOND", 1000),
+                        Config.getIntProperty("AWS_SQS_RATE_LIMIT_MIN_PER_SECOND", 5),
+                        Config.getIntProperty("AWS_SQS_RATE_LIMIT_BURST", 50)),
+                new CircuitBreaker(
+                        Config.getFloatProperty("AWS_SQS_BREAKER_FAILURE_RATIO", 0.5f),
+                        Config.getIntProperty("AWS_SQS_BREAKER_MINIMUM_CALLS", 20),
+                        Config.getIntProperty("AWS_SQS_BREAKER_WINDOW_MS", 10000),
+                        Config.getIntProperty("AWS_SQS_BREAKER_OPEN_MS", 30000),
+                        Config.getIntProperty("AWS_SQS_BREAKER_PROBE_TIMEOUT_MS", 60000)),
+                metrics,
+                Config.getIntProperty("AWS_SQS_RATE_LIMIT_MAX_WAIT_MS", 100));
+    }
+
+    /**
+     * Asks both the breaker and the rate limiter for permission to send. May sleep briefly when the
+     * rate limiter hands out a slot in the near future.
+     *
+     * @return whether the send may go ahead
+     */
+    public Permit acquire() {
+        return acquire(null);
+    }
+
+    /**
+     * Like {@link #acquire()}, but the send must also fit in the rate of its site. A refused send
+     * gives back whatever it had already taken, so it costs neither the site nor the queue a slot.
+     * A granted send must end in {@link #onSuccess}, {@link #onFailure} or {@link #release}.
+     *
+     * @param tenantLimiter the rate limiter of the site, may be null
+     * @return whether the send may go ahead
+     */
+    public Permit acquire(final AdaptiveRateLimiter tenantLimiter) {
+        if (!circuitBreaker.allowRequest()) {
+            return Permit.CIRCUIT_OPEN;
+        }
+        final long queueWait = rateLimiter.reserve(maxWaitNanos);
+        if (queueWait < 0) {
+            circuitBreaker.release();
+            return Permit.RATE_LIMITED;
+        }
+        final long tenantWait = tenantLimiter != null ? tenantLimiter.reserve(maxWaitNanos) : 0;
+        if (tenantWait < 0) {
+            rateLimiter.release();
+            circuitBreaker.release();
+            return Permit.RATE_LIMITED;
+        }
+        final long wait = Math.max(queueWait, tenantWait);
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return Permit.GRANTED;
+    }
+
+    /**
+     * Gives back a granted permit whose message never reached SQS, e.g. because a dispatch queue
+     * was full. Without it a half-open breaker would wait for the probe's outcome until it times out.
+     */
+    public void release() {
+        circuitBreaker.release();
+    }
+
+    public void onSuccess(final long startNanos) {
+        onSuccess(startNanos, 1);
+    }
+
+    /**
+     * Records a successful call.
+     *
+     * @param startNanos a {@link System#nanoTime()} taken before the call
+     * @param messages   the number of messages the call delivered
+     */
+    public void onSuccess(final long startNanos, final int messages) {
+        rateLimiter.onSuccess();
+        circuitBreaker.onSuccess();
+        metrics.onSuccess(startNanos, messages);
+    }
+
+    public void onFailure(final Throwable error, final long startNanos) {
+        onFailure(error, startNanos, 1);
+    }
+
+    /**
+     * Records a failed call.
+     *
+     * @param error      the failure
+     * @param startNanos a {@link System#nanoTime()} taken before the call
+     * @param messages   the number of messages the call carried
+     */
+    public void onFailure(final Throwable error, final long startNanos, final int messages) {
+        final boolean throttling = isThrottling(error);
+        if (throttling) {
+            rateLimiter.onThrottled();
+        } else {
+            circuitBreaker.onFailure();
+        }
+        metrics.onFailure(throttling, startNanos, messages);
+    }
+
+    public Map<String, Object> getStatus() {
+        final Map<String, Object> status = new LinkedHashMap<>();
+        status.put("queueUrl", queueUrl);
+        status.put("circuitState", circuitBreaker.getState().name());
+        status.put("timesOpened", circuitBreaker.getTimesOpened());
+        status.put("shortCircuited", circuitBreaker.getShortCircuited());
+        status.put("currentRatePerSecond", rateLimiter.getCurrentRate());
+        status.put("throttled", rateLimiter.getThrottled());
+        status.put("rateLimited", rateLimiter.getRejected());
+        return status;
+    }
+
+    /**
+     * @param error a send failure, possibly wrapped by a future
+     * @return true if SQS or KMS throttled the request
+     */
+    public static boolean isThrottling(final Throwable error) {
+        final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (!(cause instanceof AwsServiceException)) {
+            return false;
+        }
+        final AwsServiceException serviceException = (AwsServiceException) cause;
+        if (serviceException.isThrottlingException()) {
+            return true;
+        }
+        final String code = serviceException.awsErrorDetails() != null ? serviceException.awsErrorDetails().errorCode() : null;
+        return "RequestThrottled".equals(code) || "KMS.ThrottlingException".equals(code)
+                || "ThrottlingException".equals(code);
+    }
+}
@@ -0,0 +1,73 @@
+package com.dotcms.plugin.sqs;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * One {@link SendGuard} per queue URL, created on first use, and one rate limiter per site that
+ * has a send rate configured in its App.
+ */
+public class SendGuardRegistry {
+
+    private final Map<String, SendGuard> guards = new ConcurrentHashMap<>();
+    private final Map<String, TenantLimiter> tenantLimiters = new ConcurrentHashMap<>();
+    private final SqsMetrics metrics;
+    private final BiFunction<String, SqsMetrics.QueueMetrics, SendGuard> factory;
+
+    public SendGuardRegistry(final SqsMetrics metrics) {
+        this(metrics, SendGuard::fromConfig);
+    }
+
+    /**
+     * @param metrics the metrics the guards record their outcomes in
+     * @param factory creates the guard of a queue URL, e.g. with fixed limits outside of dotCMS
+     */
+    public SendGuardRegistry(final SqsMetrics metrics, final BiFunction<String, SqsMetrics.QueueMetrics, SendGuard> factory) {
+        this.metrics = metrics;
+        this.factory = factory;
+    }
+
+    public SendGuard forQueue(final String queueUrl) {
+        final SendGuard guard = guards.get(queueUrl);
+        return guard != null ? guard
+                : guards.computeIfAbsent(queueUrl, url -> factory.apply(url, metrics.forQueue(url)));
+    }
+
+    /**
+     * The rate limiter shared by the sites using one App configuration.
+     *
+     * @param tenant        the host the App secrets were read from
+     * @param ratePerSecond the configured rate, 0 or less for none
+     * @return the limiter, or null if the rate is not limited
+     */
+    public AdaptiveRateLimiter forTenant(final String tenant, final int ratePerSecond) {
+        if (ratePerSecond <= 0 || tenant == null) {
+            return null;
+        }
+        TenantLimiter limiter = tenantLimiters.get(tenant);
+        if (limiter == null || limiter.ratePerSecond != ratePerSecond) {
+            // First use, or the App was saved with a new rate
+            limiter = new TenantLimiter(ratePerSecond);
+            tenantLimiters.put(tenant, limiter);
+        }
+        return limiter.rateLimiter;
+    }
+
+    public List<Map<String, Object>> getStatus() {
+        return guards.values().stream().map(SendGuard::getStatus).collect(Collectors.toList());
+    }
+
+    private static final class TenantLimiter {
+        final int ratePerSecond;
+        final AdaptiveRateLimiter rateLimiter;
+
+        TenantLimiter(final int ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+            // A fixed rate: the tenant limit is a quota, SQS throttling is handled per queue
+            this.rateLimiter = new AdaptiveRateLimiter(ratePerSecond, ratePerSecond, Math.max(1, ratePerSecond / 10));
+        }
+    }
+}
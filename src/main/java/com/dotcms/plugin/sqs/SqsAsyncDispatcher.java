@@ -0,0 +1,223 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Config;
+import com.dotmarketing.util.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+/**
+ * Bounded in-plugin dispatch queue for the async send mode. The workflow thread only enqueues the
+ * request; a small pool of dispatcher threads hands it to the {@link SqsAsyncClient}, with the number
+ * of outstanding SQS calls capped. Pending sends are drained when the plugin stops.
+ */
+public class SqsAsyncDispatcher {
+
+    /**
+     * What to do with a message when the dispatch queue is full.
+     */
+    public enum QueueFullPolicy {
+        BLOCK, DROP, FAIL;
+
+        public static QueueFullPolicy of(final String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return BLOCK;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                Logger.warn(QueueFullPolicy.class, "Unknown queue full policy: '" + value + "'. Using BLOCK.");
+                return BLOCK;
+            }
+        }
+    }
+
+    private final SendGuardRegistry sendGuards;
+    private final BlockingQueue<PendingSend> queue;
+    private final ExecutorService workers;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final long blockTimeoutMillis;
+    private volatile boolean running = true;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public SqsAsyncDispatcher(final SendGuardRegistry sendGuards, final int capacity, final int threads,
+                    final int maxInFlight, final Duration blockTimeout) {
+        this.sendGuards = sendGuards;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.blockTimeoutMillis = blockTimeout.toMillis();
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final int threadCount = Math.max(1, threads);
+        this.workers = Executors.newFixedThreadPool(threadCount, r -> {
+            Thread thread = new Thread(r, "dotsqs-dispatcher-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < threadCount; i++) {
+            workers.execute(this::dispatchLoop);
+        }
+    }
+
+    /**
+     * Creates a dispatcher sized from the dotCMS configuration.
+     *
+     * @param sendGuards the per-queue guards that record the outcome of each send
+     * @return a new dispatcher
+     */
+    public static SqsAsyncDispatcher fromConfig(final SendGuardRegistry sendGuards) {
+        return new SqsAsyncDispatcher(sendGuards,
+                Config.getIntProperty("AWS_SQS_ASYNC_QUEUE_CAPACITY", 10000),
+                Config.getIntProperty("AWS_SQS_ASYNC_THREADS", 2),
+                Config.getIntProperty("AWS_SQS_ASYNC_MAX_IN_FLIGHT", 64),
+                Duration.ofMillis(Config.getIntProperty("AWS_SQS_ASYNC_BLOCK_TIMEOUT_MS", 30000)));
+    }
+
+    /**
+     * Queues a message for sending.
+     *
+     * @param client  the async client to send with
+     * @param request the request to send
+     * @param policy  what to do when the queue is full
+     * @return false if the message was dropped
+     * @throws RejectedExecutionException if the message could not be queued and the policy does not allow dropping it
+     */
+    public boolean submit(final SqsAsyncClient client, final SendMessageRequest request, final QueueFullPolicy policy) {
+        if (!running) {
+            throw new RejectedExecutionException("AWS SQS async dispatcher is shutting down");
+        }
+        final PendingSend pending = new PendingSend(client, request);
+        if (queue.offer(pending)) {
+            return true;
+        }
+
+        switch (policy) {
+            case DROP:
+                dropped.incrementAndGet();
+                Logger.warn(this, "AWS SQS async dispatch queue is full, dropping message for queue: " + request.queueUrl());
+                return false;
+            case FAIL:
+                throw new RejectedExecutionException("AWS SQS async dispatch queue is full");
+            case BLOCK:
+            default:
+                try {
+                    if (queue.offer(pending, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new RejectedExecutionException("Timed out waiting for space in the AWS SQS async dispatch queue");
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops accepting messages, sends whatever is still queued and waits for the outstanding calls.
+     *
+     * @param timeout the maximum time to wait for the queue to drain
+     */
+    public void shutdown(final Duration timeout) {
+        running = false;
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                Logger.warn(this, "AWS SQS async dispatcher did not drain in time, " + queue.size() + " messages not sent");
+                workers.shutdownNow();
+            }
+            final long remaining = Math.max(0, deadline - System.nanoTime());
+            if (!inFlight.tryAcquire(maxInFlight, remaining, TimeUnit.NANOSECONDS)) {
+                Logger.warn(this, "AWS SQS async dispatcher stopped with " + getInFlight() + " sends still in flight");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                final PendingSend pending = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (pending == null) {
+                    continue;
+                }
+                inFlight.acquire();
+                dispatch(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void dispatch(final PendingSend pending) {
+        final long start = System.nanoTime();
+        try {
+            pending.client.sendMessage(pending.request).whenComplete((response, error) -> {
+                inFlight.release();
+                final SendGuard guard = sendGuards.forQueue(pending.request.queueUrl());
+                if (error != null) {
+                    guard.onFailure(error, start);
+                    failed.incrementAndGet();
+                    Logger.error(this, "Error sending async message to SQS: " + error.getMessage() + ". Queue: " + pending.request.queueUrl(), error);
+                } else {
+                    guard.onSuccess(start);
+                    sent.incrementAndGet();
+                    Logger.debug(this, "Message sent to SQS queue. MessageId: " + response.messageId());
+                }
+            });
+        } catch (Exception e) {
+            inFlight.release();
+            sendGuards.forQueue(pending.request.queueUrl()).onFailure(e, start);
+            failed.incrementAndGet();
+            Logger.error(this, "Error dispatching async message to SQS: " + e.getMessage() + ". Queue: " + pending.request.queueUrl(), e);
+        }
+    }
+
+    private static final class PendingSend {
+        final SqsAsyncClient client;
+        final SendMessageRequest request;
+
+        PendingSend(final SqsAsyncClient client, final SendMessageRequest request) {
+            this.client = client;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,579 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Config;
+import com.dotmarketing.util.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+/**
+ * Groups messages per client and queue URL into {@link SendMessageBatchRequest}s. The registry gives
+ * every site with its own App configuration its own client, so messages of different sites or
+ * credentials never share a batch, and each site has its own in-flight limit per queue. A batch is flushed when it
+ * reaches the configured number of entries, when the next message would push it over the SQS
+ * payload limit, or when its linger timer expires. Entries that fail inside a batch response are
+ * retried one by one with {@code SendMessage}.
+ * <p>
+ * For FIFO queues a message group has at most one entry in one outstanding batch. Later messages
+ * of a group wait until the batch holding the earlier message has completed, and failed entries are
+ * put back in front of them, so each group is delivered in order while different groups still share
+ * batches and in-flight slots. Once an entry of a group fails for good, the later messages of that
+ * group fail as well instead of arriving with a gap.
+ */
+public class SqsBatchDispatcher {
+
+    /** SQS accepts at most 10 entries per batch call. */
+    public static final int MAX_BATCH_ENTRIES = 10;
+
+    /** SQS accepts at most 256 KB of payload per batch call. */
+    public static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    private final SendGuardRegistry sendGuards;
+    /** Queues without a message for this long are dropped, so retired clients do not pile up. */
+    private static final long IDLE_QUEUE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Map<BatchKey, QueueBatch> queues = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService sender;
+    private final int retryAttempts;
+    private volatile boolean running = true;
+
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong entriesSent = new AtomicLong();
+    private final AtomicLong entriesRetried = new AtomicLong();
+    private final AtomicLong entriesFailed = new AtomicLong();
+
+    public SqsBatchDispatcher(final SendGuardRegistry sendGuards, final int senderThreads, final int retryAttempts) {
+        this.sendGuards = sendGuards;
+        this.retryAttempts = Math.max(0, retryAttempts);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dotsqs-batch-linger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(Math.max(1, senderThreads), r -> {
+            Thread thread = new Thread(r, "dotsqs-batch-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::evictIdleQueues, IDLE_QUEUE_MILLIS, IDLE_QUEUE_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a batch dispatcher sized from the dotCMS configuration.
+     *
+     * @param sendGuards the per-queue guards that record the outcome of each batch call
+     * @return a new batch dispatcher
+     */
+    public static SqsBatchDispatcher fromConfig(final SendGuardRegistry sendGuards) {
+        return new SqsBatchDispatcher(sendGuards,
+                Config.getIntProperty("AWS_SQS_BATCH_SENDER_THREADS", 2),
+                Config.getIntProperty("AWS_SQS_BATCH_RETRY_ATTEMPTS", 2));
+    }
+
+    /**
+     * Adds a message to the pending batch of its client and queue.
+     *
+     * @param client    the async client to send with
+     * @param request   the message to send
+     * @param appConfig supplies the batch size, linger time and in-flight limit of the client's queue
+     * @return a future completed with the SQS message id once the message has been sent
+     */
+    public CompletableFuture<String> submit(final SqsAsyncClient client, final SendMessageRequest request,
+                    final AppConfig appConfig) {
+        if (!running) {
+            throw new RejectedExecutionException("AWS SQS batch dispatcher is shutting down");
+        }
+        final PendingEntry entry = new PendingEntry(client, request);
+        if (entry.size > MAX_BATCH_BYTES) {
+            // It fits no batch, and a FIFO queue would hold it, and the rest of its group, forever
+            entriesFailed.incrementAndGet();
+            entry.result.completeExceptionally(new IllegalArgumentException("Message of " + entry.size
+                    + " bytes exceeds the SQS batch limit of " + MAX_BATCH_BYTES + " bytes. Queue: " + request.queueUrl()));
+            return entry.result;
+        }
+        // A queue retired by reset() in the meantime refuses the entry; its successor takes it
+        final BatchKey key = new BatchKey(client, request.queueUrl());
+        while (!queues.computeIfAbsent(key, k -> new QueueBatch(client, k.queueUrl, appConfig.batchMaxInFlight))
+                .add(entry, appConfig.batchSize, appConfig.batchLingerMillis)) {
+            Thread.onSpinWait();
+        }
+        return entry.result;
+    }
+
+    /**
+     * Flushes every pending batch and forgets the per-queue state, so new settings take effect. A
+     * FIFO queue keeps its state until its outstanding batches have completed, otherwise the next
+     * message of a group could overtake the one in flight.
+     *
+     * @param timeout how long to wait for outstanding FIFO batches
+     */
+    public void reset(final Duration timeout) {
+        queues.values().forEach(QueueBatch::flush);
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (System.nanoTime() < deadline && !queues.values().stream().allMatch(QueueBatch::isIdle)) {
+                Thread.sleep(10);
+                queues.values().forEach(QueueBatch::flush);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final long now = System.nanoTime();
+        for (BatchKey key : queues.keySet()) {
+            queues.computeIfPresent(key, (k, queue) -> queue.retireIfIdle(now) ? null : queue);
+        }
+        if (!queues.isEmpty()) {
+            Logger.warn(this, "AWS SQS batch dispatcher keeps the state of " + queues.size()
+                    + " queues with batches still in flight; new settings apply to them once they are idle");
+        }
+    }
+
+    private void evictIdleQueues() {
+        final long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(IDLE_QUEUE_MILLIS);
+        for (BatchKey key : queues.keySet()) {
+            queues.computeIfPresent(key, (k, queue) -> queue.retireIfIdle(cutoff) ? null : queue);
+        }
+    }
+
+    public long getBatchesSent() {
+        return batchesSent.get();
+    }
+
+    public long getEntriesSent() {
+        return entriesSent.get();
+    }
+
+    public long getEntriesRetried() {
+        return entriesRetried.get();
+    }
+
+    public long getEntriesFailed() {
+        return entriesFailed.get();
+    }
+
+    /**
+     * Flushes everything that is pending and waits for the outstanding batch calls.
+     *
+     * @param timeout the maximum time to wait
+     */
+    public void shutdown(final Duration timeout) {
+        running = false;
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        queues.values().forEach(QueueBatch::flush);
+        scheduler.shutdownNow();
+        try {
+            // FIFO entries behind an outstanding batch are only flushed once that batch completes
+            while (System.nanoTime() < deadline && !queues.values().stream().allMatch(QueueBatch::isIdle)) {
+                Thread.sleep(10);
+                queues.values().forEach(QueueBatch::flush);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sender.shutdown();
+        try {
+            if (!sender.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                Logger.warn(this, "AWS SQS batch dispatcher did not drain in time");
+                sender.shutdownNow();
+            }
+            for (QueueBatch queue : queues.values()) {
+                final long remaining = Math.max(0, deadline - System.nanoTime());
+                if (!queue.inFlight.tryAcquire(queue.maxInFlight, remaining, TimeUnit.NANOSECONDS)) {
+                    Logger.warn(this, "AWS SQS batch dispatcher stopped with batches still in flight for queue: " + queue.queueUrl);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sender.shutdownNow();
+        }
+        queues.clear();
+    }
+
+    private void send(final QueueBatch queue, final List<PendingEntry> batch) {
+        final List<SendMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            entries.add(toBatchEntry(String.valueOf(i), batch.get(i).request));
+        }
+        final SendMessageBatchRequest batchRequest = SendMessageBatchRequest.builder()
+                .queueUrl(queue.queueUrl)
+                .entries(entries)
+                .build();
+
+        try {
+            queue.inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.forEach(entry -> entry.result.completeExceptionally(e));
+            queue.complete(batch, new ArrayList<>(), batch);
+            return;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            queue.client.sendMessageBatch(batchRequest).whenComplete((response, error) -> {
+                queue.inFlight.release();
+                final SendGuard guard = sendGuards.forQueue(queue.queueUrl);
+                if (error != null) {
+                    guard.onFailure(error, start, batch.size());
+                    Logger.warn(this, "Batch send to SQS failed, retrying entries: " + error.getMessage() + ". Queue: " + queue.queueUrl);
+                    retryAll(queue, batch);
+                    return;
+                }
+                guard.onSuccess(start, response.successful().size());
+                batchesSent.incrementAndGet();
+                for (SendMessageBatchResultEntry result : response.successful()) {
+                    entriesSent.incrementAndGet();
+                    batch.get(Integer.parseInt(result.id())).result.complete(result.messageId());
+                }
+                final Set<Integer> retryable = new HashSet<>();
+                final List<PendingEntry> rejected = new ArrayList<>();
+                for (BatchResultErrorEntry failure : response.failed()) {
+                    final PendingEntry entry = batch.get(Integer.parseInt(failure.id()));
+                    if (Boolean.TRUE.equals(failure.senderFault())) {
+                        // The request itself is invalid, sending it again will not help
+                        entriesFailed.incrementAndGet();
+                        entry.result.completeExceptionally(new IllegalStateException(
+                                "SQS rejected message: " + failure.code() + " " + failure.message()));
+                        rejected.add(entry);
+                    } else if (queue.fifo) {
+                        retryable.add(Integer.parseInt(failure.id()));
+                    } else {
+                        retry(entry, retryAttempts);
+                    }
+                }
+                if (queue.fifo) {
+                    final List<PendingEntry> failed = new ArrayList<>(retryable.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (retryable.contains(i)) {
+                            failed.add(batch.get(i));
+                        }
+                    }
+                    queue.complete(batch, failed, rejected);
+                }
+            });
+        } catch (Exception e) {
+            queue.inFlight.release();
+            retryAll(queue, batch);
+        }
+    }
+
+    private void retryAll(final QueueBatch queue, final List<PendingEntry> batch) {
+        if (queue.fifo) {
+            queue.complete(batch, batch, new ArrayList<>());
+        } else {
+            batch.forEach(entry -> retry(entry, retryAttempts));
+        }
+    }
+
+    private void retry(final PendingEntry entry, final int attemptsLeft) {
+        if (attemptsLeft <= 0) {
+            entriesFailed.incrementAndGet();
+            entry.result.completeExceptionally(new IllegalStateException(
+                    "Message could not be sent to SQS queue: " + entry.request.queueUrl()));
+            return;
+        }
+        entriesRetried.incrementAndGet();
+        try {
+            entry.client.sendMessage(entry.request).whenComplete((response, error) -> {
+                if (error != null) {
+                    retry(entry, attemptsLeft - 1);
+                } else {
+                    entriesSent.incrementAndGet();
+                    entry.result.complete(response.messageId());
+                }
+            });
+        } catch (Exception e) {
+            retry(entry, attemptsLeft - 1);
+        }
+    }
+
+    private static SendMessageBatchRequestEntry toBatchEntry(final String id, final SendMessageRequest request) {
+        return SendMessageBatchRequestEntry.builder()
+                .id(id)
+                .messageBody(request.messageBody())
+                .delaySeconds(request.delaySeconds())
+                .messageAttributes(request.messageAttributes())
+                .messageGroupId(request.messageGroupId())
+                .messageDeduplicationId(request.messageDeduplicationId())
+                .build();
+    }
+
+    /**
+     * The size SQS counts against the batch limit: the body plus the name, type and value of every
+     * message attribute.
+     */
+    static int payloadSize(final SendMessageRequest request) {
+        int size = request.messageBody() != null ? request.messageBody().getBytes(StandardCharsets.UTF_8).length : 0;
+        if (request.hasMessageAttributes()) {
+            for (Map.Entry<String, MessageAttributeValue> attribute : request.messageAttributes().entrySet()) {
+                size += attribute.getKey().getBytes(StandardCharsets.UTF_8).length;
+                size += attribute.getValue().dataType() != null ? attribute.getValue().dataType().length() : 0;
+                size += attribute.getValue().stringValue() != null ? attribute.getValue().stringValue().getBytes(StandardCharsets.UTF_8).length : 0;
+            }
+        }
+        return size;
+    }
+
+    private final class QueueBatch {
+        final SqsAsyncClient client;
+        final String queueUrl;
+        final boolean fifo;
+        final int maxInFlight;
+        final Semaphore inFlight;
+        private List<PendingEntry> pending = new ArrayList<>();
+        private int pendingBytes;
+        private int batchSize = MAX_BATCH_ENTRIES;
+        private long lingerMillis;
+        private ScheduledFuture<?> lingerTimer;
+        /** FIFO message groups that are part of an outstanding batch. */
+        private final Set<String> busyGroups = new HashSet<>();
+        /** Set by {@link SqsBatchDispatcher#reset} once the queue has been replaced. */
+        private boolean retired;
+        private long lastUsed = System.nanoTime();
+
+        QueueBatch(final SqsAsyncClient client, final String queueUrl, final int maxInFlight) {
+            this.client = client;
+            this.queueUrl = queueUrl;
+            this.fifo = FifoMessageIds.isFifoQueue(queueUrl);
+            this.maxInFlight = Math.max(1, maxInFlight);
+            this.inFlight = new Semaphore(this.maxInFlight);
+        }
+
+        /**
+         * @return false if the queue has been retired and the entry must go to its successor
+         */
+        synchronized boolean add(final PendingEntry entry, final int batchSize, final long lingerMillis) {
+            if (retired) {
+                return false;
+            }
+            lastUsed = System.nanoTime();
+            this.batchSize = Math.min(Math.max(1, batchSize), MAX_BATCH_ENTRIES);
+            this.lingerMillis = Math.max(0, lingerMillis);
+            if (!pending.isEmpty() && pendingBytes + entry.size > MAX_BATCH_BYTES) {
+                flush();
+            }
+            pending.add(entry);
+            pendingBytes += entry.size;
+
+            if (pending.size() >= this.batchSize) {
+                flush();
+            } else if (lingerTimer == null) {
+                lingerTimer = scheduler.schedule(this::flush, this.lingerMillis, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
+
+        synchronized void flush() {
+            if (lingerTimer != null) {
+                lingerTimer.cancel(false);
+                lingerTimer = null;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            final List<PendingEntry> batch;
+            if (fifo) {
+                batch = takeReadyGroups();
+                if (batch.isEmpty()) {
+                    // Everything waits for an outstanding batch, which flushes again when it completes
+                    return;
+                }
+            } else {
+                batch = pending;
+                pending = new ArrayList<>();
+                pendingBytes = 0;
+            }
+            try {
+                sender.execute(() -> send(this, batch));
+            } catch (RejectedExecutionException e) {
+                batch.forEach(entry -> entry.result.completeExceptionally(e));
+                batch.forEach(entry -> busyGroups.remove(entry.groupId));
+                if (fifo) {
+                    failGroups(batch);
+                }
+            }
+        }
+
+        synchronized boolean isIdle() {
+            return pending.isEmpty() && busyGroups.isEmpty();
+        }
+
+        /**
+         * @param cutoff the queue is only retired if it has not been used after this time
+         */
+        synchronized boolean retireIfIdle(final long cutoff) {
+            retired = isIdle() && lastUsed - cutoff <= 0;
+            return retired;
+        }
+
+        /**
+         * Takes the next batch of a FIFO queue: pending entries in order, one per group, skipping
+         * every group that is still part of an outstanding batch or whose earlier entry did not fit.
+         * With one entry per group, an entry that fails inside a batch cannot be overtaken by a later
+         * entry of its group in the same batch.
+         */
+        private List<PendingEntry> takeReadyGroups() {
+            final List<PendingEntry> batch = new ArrayList<>(batchSize);
+            final List<PendingEntry> remaining = new ArrayList<>();
+            final Set<String> blocked = new HashSet<>(busyGroups);
+            int batchBytes = 0;
+            int remainingBytes = 0;
+            for (PendingEntry entry : pending) {
+                if (!blocked.contains(entry.groupId) && batch.size() < batchSize
+                        && batchBytes + entry.size <= MAX_BATCH_BYTES) {
+                    batch.add(entry);
+                    batchBytes += entry.size;
+                    blocked.add(entry.groupId);
+                } else {
+                    blocked.add(entry.groupId);
+                    remaining.add(entry);
+                    remainingBytes += entry.size;
+                }
+            }
+            batch.forEach(entry -> busyGroups.add(entry.groupId));
+            pending = remaining;
+            pendingBytes = remainingBytes;
+            return batch;
+        }
+
+        /**
+         * Called when a FIFO batch has completed. Failed entries go back in front of the later
+         * messages of their groups before the groups are released. The later messages of a group
+         * whose entry failed for good are failed too.
+         *
+         * @param batch    the completed batch
+         * @param failed   the entries to send again, in batch order
+         * @param rejected the entries that already failed for good
+         */
+        synchronized void complete(final List<PendingEntry> batch, final List<PendingEntry> failed,
+                        final List<PendingEntry> rejected) {
+            final List<PendingEntry> retries = new ArrayList<>(failed.size());
+            final List<PendingEntry> lost = new ArrayList<>(rejected);
+            for (PendingEntry entry : failed) {
+                if (++entry.attempts > retryAttempts) {
+                    entriesFailed.incrementAndGet();
+                    entry.result.completeExceptionally(new IllegalStateException(
+                            "Message could not be sent to SQS queue: " + queueUrl));
+                    lost.add(entry);
+                } else {
+                    entriesRetried.incrementAndGet();
+                    retries.add(entry);
+                }
+            }
+            batch.forEach(entry -> busyGroups.remove(entry.groupId));
+            failGroups(lost);
+            if (!retries.isEmpty()) {
+                retries.addAll(pending);
+                pending = retries;
+                pendingBytes = pending.stream().mapToInt(entry -> entry.size).sum();
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            if (retries.isEmpty() || !running) {
+                flush();
+            } else if (lingerTimer == null) {
+                // Give a failing queue a moment before the retry
+                lingerTimer = scheduler.schedule(this::flush, Math.max(lingerMillis, 100), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Fails the pending messages of the groups of the given entries, which could otherwise only
+         * be delivered with a gap in their group.
+         */
+        private void failGroups(final List<PendingEntry> lost) {
+            if (lost.isEmpty()) {
+                return;
+            }
+            final Set<String> groups = new HashSet<>();
+            lost.forEach(entry -> groups.add(entry.groupId));
+            final List<PendingEntry> remaining = new ArrayList<>(pending.size());
+            for (PendingEntry entry : pending) {
+                if (groups.contains(entry.groupId)) {
+                    entriesFailed.incrementAndGet();
+                    entry.result.completeExceptionally(new IllegalStateException(
+                            "An earlier message of group " + entry.groupId + " could not be sent to SQS queue: " + queueUrl));
+                } else {
+                    remaining.add(entry);
+                }
+            }
+            if (remaining.size() != pending.size()) {
+                pending = remaining;
+                pendingBytes = pending.stream().mapToInt(entry -> entry.size).sum();
+            }
+        }
+    }
+
+    /** The client identity and queue URL a batch is sent to. */
+    private static final class BatchKey {
+        final SqsAsyncClient client;
+        final String queueUrl;
+
+        BatchKey(final SqsAsyncClient client, final String queueUrl) {
+            this.client = client;
+            this.queueUrl = queueUrl;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BatchKey)) {
+                return false;
+            }
+            BatchKey that = (BatchKey) o;
+            return client == that.client && queueUrl.equals(that.queueUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(client), queueUrl);
+        }
+    }
+
+    private static final class PendingEntry {
+        final SqsAsyncClient client;
+        final SendMessageRequest request;
+        final int size;
+        final String groupId;
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        int attempts;
+
+        PendingEntry(final SqsAsyncClient client, final SendMessageRequest request) {
+            this.client = client;
+            this.request = request;
+            this.size = payloadSize(request);
+            this.groupId = request.messageGroupId() != null ? request.messageGroupId() : "";
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Config;
+import com.dotmarketing.util.Logger;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClientBuilder;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.SqsClientBuilder;
+
+/**
+ * Long-lived cache of {@link SqsClient} and {@link SqsAsyncClient} instances keyed by region,
+ * credentials, endpoint, site and HTTP transport settings. Clients share nothing with each other, but each one keeps its own pooled HTTP connections
+ * alive between workflow executions. The registry is bounded; the least recently used client
+ * is retired when it is full, and clients that have not been used for a while are retired by
+ * a background reaper. Retired clients are closed after a grace period so in-flight calls can finish.
+ */
+public class SqsClientRegistry {
+
+    private final int maxClients;
+    private final HttpTransportConfig defaultTransport;
+    private final Duration connectionMaxIdleTime;
+    private final Duration clientMaxIdleTime;
+    private final Duration closeGracePeriod;
+
+    private final Map<ClientKey, ClientEntry> clients = new ConcurrentHashMap<>();
+    /** The settings derived from the App configuration of each tenant, keyed by host id. */
+    private final Map<String, SettingsOf> settings = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reaper;
+
+    public SqsClientRegistry(final int maxClients, final int maxConnections, final Duration connectionMaxIdleTime,
+                    final Duration clientMaxIdleTime, final Duration closeGracePeriod) {
+        this.maxClients = Math.max(1, maxClients);
+        this.defaultTransport = HttpTransportConfig.defaults(maxConnections);
+        this.connectionMaxIdleTime = connectionMaxIdleTime;
+        this.clientMaxIdleTime = clientMaxIdleTime;
+        this.closeGracePeriod = closeGracePeriod;
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dotsqs-client-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, clientMaxIdleTime.getSeconds() / 2);
+        this.reaper.scheduleWithFixedDelay(this::evictIdleClients, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates a registry sized from the dotCMS configuration.
+     *
+     * @return a new registry
+     */
+    public static SqsClientRegistry fromConfig() {
+        return new SqsClientRegistry(
+                Config.getIntProperty("AWS_SQS_CLIENT_CACHE_SIZE", 16),
+                Config.getIntProperty("AWS_SQS_MAX_CONNECTIONS", 50),
+                Duration.ofSeconds(Config.getIntProperty("AWS_SQS_CONNECTION_MAX_IDLE_SECONDS", 60)),
+                Duration.ofSeconds(Config.getIntProperty("AWS_SQS_CLIENT_MAX_IDLE_SECONDS", 900)),
+                Duration.ofSeconds(Config.getIntProperty("AWS_SQS_CLIENT_CLOSE_GRACE_SECONDS", 60)));
+    }
+
+    /**
+     * Returns the shared client for the given region and App configuration, building it on first
+     * use with the App's credentials and HTTP transport settings.
+     *
+     * @param region    the AWS region of the queue
+     * @param appConfig the App configuration
+     * @param endpoint  an optional endpoint override, may be null
+     * @return a client that must NOT be closed by the caller
+     */
+    public SqsClient getClient(final Region region, final AppConfig appConfig, final String endpoint) {
+        final SettingsOf settings = settingsOf(appConfig);
+        return getClient(new ClientKey(region, settings.credentials, endpoint, appConfig.hostId, settings.transport));
+    }
+
+    /**
+     * Returns the shared client for the given region and credentials with the default transport
+     * settings, building it on first use.
+     *
+     * @param region       the AWS region of the queue
+     * @param awsAccessKey the access key
+     * @param awsSecretKey the secret key
+     * @param endpoint     an optional endpoint override, may be null
+     * @return a client that must NOT be closed by the caller
+     */
+    public SqsClient getClient(final Region region, final String awsAccessKey, final String awsSecretKey,
+                    final String endpoint) {
+        return getClient(new ClientKey(region, AwsCredentialsConfig.staticKeys(awsAccessKey, awsSecretKey), endpoint,
+                null, defaultTransport));
+    }
+
+    private SqsClient getClient(final ClientKey key) {
+        final ClientEntry entry = getEntry(key);
+        SqsClient client = entry.client;
+        if (client == null) {
+            synchronized (entry) {
+                if (entry.client == null) {
+                    entry.client = buildClient(key, credentialsOf(key, entry));
+                }
+                client = entry.client;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Returns the shared asynchronous client for the given region and App configuration, building
+     * it on first use with the App's credentials and HTTP transport settings.
+     *
+     * @param region    the AWS region of the queue
+     * @param appConfig the App configuration
+     * @param endpoint  an optional endpoint override, may be null
+     * @return a client that must NOT be closed by the caller
+     */
+    public SqsAsyncClient getAsyncClient(final Region region, final AppConfig appConfig, final String endpoint) {
+        final SettingsOf settings = settingsOf(appConfig);
+        return getAsyncClient(new ClientKey(region, settings.credentials, endpoint, appConfig.hostId, settings.transport));
+    }
+
+    /**
+     * Returns the shared asynchronous client for the given region and credentials with the default
+     * transport settings, building it on first use.
+     *
+     * @param region       the AWS region of the queue
+     * @param awsAccessKey the access key
+     * @param awsSecretKey the secret key
+     * @param endpoint     an optional endpoint override, may be null
+     * @return a client that must NOT be closed by the caller
+     */
+    public SqsAsyncClient getAsyncClient(final Region region, final String awsAccessKey, final String awsSecretKey,
+                    final String endpoint) {
+        return getAsyncClient(new ClientKey(region, AwsCredentialsConfig.staticKeys(awsAccessKey, awsSecretKey), endpoint,
+                null, defaultTransport));
+    }
+
+    private SqsAsyncClient getAsyncClient(final ClientKey key) {
+        final ClientEntry entry = getEntry(key);
+        SqsAsyncClient client = entry.asyncClient;
+        if (client == null) {
+            synchronized (entry) {
+                if (entry.asyncClient == null) {
+                    entry.asyncClient = buildAsyncClient(key, credentialsOf(key, entry));
+                }
+                client = entry.asyncClient;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * The credentials and transport settings of the App configuration. The cached configuration of
+     * a site is the same instance until its App is saved, so they are only rebuilt then.
+     */
+    private SettingsOf settingsOf(final AppConfig appConfig) {
+        final String tenant = appConfig.hostId != null ? appConfig.hostId : "";
+        SettingsOf cached = settings.get(tenant);
+        if (cached == null || cached.appConfig != appConfig) {
+            cached = new SettingsOf(appConfig, AwsCredentialsConfig.from(appConfig), HttpTransportConfig.from(appConfig));
+            settings.put(tenant, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * The credentials provider shared by the sync and async client of an entry, so both use one
+     * STS session. The first credentials are fetched here, while the client is built, so a send only
+     * waits for STS if the session could not be renewed in the background. Called with the entry locked.
+     */
+    private AwsCredentialsProvider credentialsOf(final ClientKey key, final ClientEntry entry) {
+        if (entry.credentials == null) {
+            final AwsCredentialsProvider credentials = key.credentials.provider(key.region);
+            try {
+                credentials.resolveCredentials();
+            } catch (Exception e) {
+                // The send reports the error; the provider tries again then
+                Logger.warn(this, "Could not fetch AWS credentials for region: " + key.region + ", " + key.credentials
+                        + ": " + e.getMessage());
+            }
+            entry.credentials = credentials;
+        }
+        return entry.credentials;
+    }
+
+    private ClientEntry getEntry(final ClientKey key) {
+        ClientEntry entry = clients.get(key);
+        if (entry == null) {
+            entry = clients.computeIfAbsent(key, k -> new ClientEntry());
+            evictOverflow(key);
+        }
+        entry.lastAccess = System.nanoTime();
+        return entry;
+    }
+
+    /**
+     * Retires every cached client, e.g. after the App credentials or transport settings have changed.
+     */
+    public void invalidateAll() {
+        settings.clear();
+        for (ClientKey key : new ArrayList<>(clients.keySet())) {
+            retire(key);
+        }
+    }
+
+    /**
+     * Retires the clients built for the App configuration of one site.
+     *
+     * @param tenant the host the App secrets were read from
+     */
+    public void invalidateTenant(final String tenant) {
+        settings.remove(tenant != null ? tenant : "");
+        for (ClientKey key : new ArrayList<>(clients.keySet())) {
+            if (Objects.equals(tenant, key.tenant)) {
+                retire(key);
+            }
+        }
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * Closes all clients and stops the reaper thread. Called from {@link Activator#stop}.
+     */
+    public void shutdown() {
+        reaper.shutdownNow().forEach(Runnable::run);
+        for (ClientEntry entry : clients.values()) {
+            closeQuietly(entry);
+        }
+        clients.clear();
+        settings.clear();
+    }
+
+    private SqsClient buildClient(final ClientKey key, final AwsCredentialsProvider credentials) {
+        Logger.info(this, "Creating SQS client for region: " + key.region + ", endpoint: "
+                + (key.endpoint != null ? key.endpoint : "default") + ", " + key.credentials + ", " + key.transport);
+
+        SqsClientBuilder builder = SqsClient.builder()
+                .region(key.region)
+                .credentialsProvider(credentials)
+                .httpClientBuilder(key.transport.syncHttpClient(connectionMaxIdleTime))
+                .overrideConfiguration(key.transport.overrideConfiguration());
+
+        if (key.endpoint != null && !key.endpoint.isEmpty()) {
+            builder.endpointOverride(URI.create(key.endpoint));
+        }
+        return builder.build();
+    }
+
+    private SqsAsyncClient buildAsyncClient(final ClientKey key, final AwsCredentialsProvider credentials) {
+        Logger.info(this, "Creating async SQS client for region: " + key.region + ", endpoint: "
+                + (key.endpoint != null ? key.endpoint : "default") + ", " + key.credentials + ", " + key.transport);
+
+        SqsAsyncClientBuilder builder = SqsAsyncClient.builder()
+                .region(key.region)
+                .credentialsProvider(credentials)
+                .httpClientBuilder(key.transport.asyncHttpClient(connectionMaxIdleTime))
+                .overrideConfiguration(key.transport.overrideConfiguration());
+
+        if (key.endpoint != null && !key.endpoint.isEmpty()) {
+            builder.endpointOverride(URI.create(key.endpoint));
+        }
+        return builder.build();
+    }
+
+    private void evictOverflow(final ClientKey justAdded) {
+        while (clients.size() > maxClients) {
+            ClientKey eldest = null;
+            long eldestAccess = Long.MAX_VALUE;
+            for (Map.Entry<ClientKey, ClientEntry> e : clients.entrySet()) {
+                if (!e.getKey().equals(justAdded) && e.getValue().lastAccess < eldestAccess) {
+                    eldest = e.getKey();
+                    eldestAccess = e.getValue().lastAccess;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            retire(eldest);
+        }
+    }
+
+    private void evictIdleClients() {
+        try {
+            final long cutoff = System.nanoTime() - clientMaxIdleTime.toNanos();
+            List<ClientKey> idle = new ArrayList<>();
+            clients.forEach((key, entry) -> {
+                if (entry.lastAccess < cutoff) {
+                    idle.add(key);
+                }
+            });
+            idle.forEach(this::retire);
+        } catch (Exception e) {
+            Logger.warn(this, "Error evicting idle SQS clients: " + e.getMessage());
+        }
+    }
+
+    private void retire(final ClientKey key) {
+        final ClientEntry entry = clients.remove(key);
+        if (entry == null) {
+            return;
+        }
+        Logger.info(this, "Retiring SQS client for region: " + key.region);
+        try {
+            reaper.schedule(() -> closeQuietly(entry), closeGracePeriod.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // reaper already shut down
+            closeQuietly(entry);
+        }
+    }
+
+    private void closeQuietly(final ClientEntry entry) {
+        try {
+            if (entry.client != null) {
+                entry.client.close();
+            }
+            if (entry.asyncClient != null) {
+                entry.asyncClient.close();
+            }
+        } catch (Exception e) {
+            Logger.warn(this, "Error closing SQS client: " + e.getMessage());
+        }
+        // The clients do not close a provider they were given
+        if (entry.credentials != null) {
+            AwsCredentialsConfig.closeQuietly(entry.credentials);
+        }
+    }
+
+    private static final class SettingsOf {
+        final AppConfig appConfig;
+        final AwsCredentialsConfig credentials;
+        final HttpTransportConfig transport;
+
+        SettingsOf(final AppConfig appConfig, final AwsCredentialsConfig credentials, final HttpTransportConfig transport) {
+            this.appConfig = appConfig;
+            this.credentials = credentials;
+            this.transport = transport;
+        }
+    }
+
+    private static final class ClientEntry {
+        volatile SqsClient client;
+        volatile SqsAsyncClient asyncClient;
+        volatile AwsCredentialsProvider credentials;
+        volatile long lastAccess = System.nanoTime();
+    }
+
+    static final class ClientKey {
+        final Region region;
+        final AwsCredentialsConfig credentials;
+        final String endpoint;
+        /** The host whose App secrets the client was built from, so a site with its own secrets gets its own pool. */
+        final String tenant;
+        final HttpTransportConfig transport;
+
+        ClientKey(final Region region, final AwsCredentialsConfig credentials, final String endpoint, final String tenant,
+                  final HttpTransportConfig transport) {
+            this.region = region;
+            this.credentials = credentials;
+            this.endpoint = endpoint;
+            this.tenant = tenant;
+            this.transport = transport;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ClientKey)) {
+                return false;
+            }
+            ClientKey that = (ClientKey) o;
+            return region.equals(that.region) && credentials.equals(that.credentials)
+                    && Objects.equals(endpoint, that.endpoint) && Objects.equals(tenant, that.tenant)
+                    && transport.equals(that.transport);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(region, credentials, endpoint, tenant, transport);
+        }
+    }
+}
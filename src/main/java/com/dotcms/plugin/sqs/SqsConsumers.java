@@ -0,0 +1,108 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Config;
+import com.dotmarketing.util.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import software.amazon.awssdk.regions.Region;
+
+/**
+ * The queue consumers configured in dotCMS, started and stopped with the plugin. The queues are
+ * listed in {@code AWS_SQS_CONSUMER_QUEUES} as comma separated queue URLs, each optionally followed
+ * by {@code |<concurrency>} to override {@code AWS_SQS_CONSUMER_CONCURRENCY} for that queue and
+ * {@code |<site identifier>} to receive with the App configuration of that site instead of the
+ * system host, e.g. {@code https://sqs.../inbound|8|48190c8c-42c4-46af-8d1a-0cd5db894797}.
+ */
+public class SqsConsumers {
+
+    private final List<SqsQueueConsumer> consumers;
+
+    public SqsConsumers(final List<SqsQueueConsumer> consumers) {
+        this.consumers = Collections.unmodifiableList(new ArrayList<>(consumers));
+    }
+
+    /**
+     * Starts a consumer for every queue configured in dotCMS.
+     *
+     * @return the running consumers, empty if no queue is configured
+     */
+    public static SqsConsumers fromConfig() {
+        final String queues = Config.getStringProperty("AWS_SQS_CONSUMER_QUEUES", "");
+        final int defaultConcurrency = Config.getIntProperty("AWS_SQS_CONSUMER_CONCURRENCY", 4);
+        final String endpoint = Config.getStringProperty("AWS_SQS_CONSUMER_ENDPOINT", null);
+        final SqsMessageHandler handler = new WorkflowMessageHandler(
+                Config.getStringProperty("AWS_SQS_CONSUMER_DEFAULT_ACTION_ID", null),
+                Config.getStringProperty("AWS_SQS_CONSUMER_USER_ID", null));
+
+        final List<SqsQueueConsumer> consumers = new ArrayList<>();
+        for (String queue : queues.split(",")) {
+            final String entry = queue.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            final String[] parts = entry.split("\\|", -1);
+            final String queueUrl = parts[0].trim();
+            int concurrency = defaultConcurrency;
+            if (parts.length > 1 && !parts[1].trim().isEmpty()) {
+                try {
+                    concurrency = Integer.parseInt(parts[1].trim());
+                } catch (NumberFormatException e) {
+                    Logger.warn(SqsConsumers.class, "Invalid consumer concurrency in '" + entry + "'. Using " + defaultConcurrency + ".");
+                }
+            }
+            final String hostId = parts.length > 2 && !parts[2].trim().isEmpty() ? parts[2].trim() : null;
+            try {
+                consumers.add(new SqsQueueConsumer(queueUrl, regionOf(queueUrl), endpoint, hostId, handler, concurrency,
+                        Config.getIntProperty("AWS_SQS_CONSUMER_WAIT_SECONDS", 20),
+                        Config.getIntProperty("AWS_SQS_CONSUMER_VISIBILITY_TIMEOUT_SECONDS", 60),
+                        Duration.ofSeconds(Config.getIntProperty("AWS_SQS_CONSUMER_MAX_PROCESSING_SECONDS", 3600)),
+                        Duration.ofMillis(Config.getIntProperty("AWS_SQS_CONSUMER_ACK_LINGER_MS", 100))));
+            } catch (Exception e) {
+                Logger.error(SqsConsumers.class, "Error starting SQS consumer for queue " + queueUrl + ": " + e.getMessage(), e);
+            }
+        }
+        return new SqsConsumers(consumers);
+    }
+
+    public List<Map<String, Object>> getStatus() {
+        return consumers.stream().map(SqsQueueConsumer::getStatus).collect(Collectors.toList());
+    }
+
+    /**
+     * Stops every consumer. The consumers drain in parallel, so the whole shutdown takes at most
+     * about {@code timeout}.
+     *
+     * @param timeout how long to wait for running handlers
+     */
+    public void shutdown(final Duration timeout) {
+        final List<Thread> stopping = new ArrayList<>();
+        for (SqsQueueConsumer consumer : consumers) {
+            final Thread thread = new Thread(() -> consumer.shutdown(timeout), "dotsqs-consumer-shutdown");
+            thread.start();
+            stopping.add(thread);
+        }
+        for (Thread thread : stopping) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the region from the queue URL, falling back to {@code AWS_SQS_CONSUMER_REGION} for URLs
+     * that do not contain one.
+     */
+    static Region regionOf(final String queueUrl) {
+        final Region region = SqsDestination.regionOf(queueUrl);
+        return region != null ? region : Region.of(Config.getStringProperty("AWS_SQS_CONSUMER_REGION", "us-east-1"));
+    }
+}
@@ -0,0 +1,122 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Logger;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import software.amazon.awssdk.regions.Region;
+
+/**
+ * One queue a message is sent to. The actionlet's queue URL parameter may list several of them,
+ * separated by commas or new lines, each optionally followed by {@code |<policy>}:
+ * <pre>
+ * https://sqs.us-east-1.amazonaws.com/123456789012/search-index|all,
+ * https://sqs.eu-west-1.amazonaws.com/123456789012/replica|any,
+ * https://sqs.eu-west-1.amazonaws.com/123456789012/analytics|best-effort
+ * </pre>
+ */
+public final class SqsDestination {
+
+    /** What a failed send to a destination means for the workflow action. */
+    public enum Policy {
+        /** The action fails if this destination fails. */
+        ALL,
+        /** The action fails only if every destination with this policy fails. */
+        ANY,
+        /** Failures are logged and the action does not wait for this destination. */
+        BEST_EFFORT;
+
+        public static Policy of(final String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return ALL;
+            }
+            try {
+                return Policy.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                Logger.warn(Policy.class, "Unknown destination policy: '" + value + "'. Using all.");
+                return ALL;
+            }
+        }
+    }
+
+    public final String queueUrl;
+    public final Region region;
+    public final Policy policy;
+
+    public SqsDestination(final String queueUrl, final Region region, final Policy policy) {
+        this.queueUrl = queueUrl;
+        this.region = region;
+        this.policy = policy;
+    }
+
+    /**
+     * Parses the destinations of the queue URL parameter.
+     *
+     * @param value         the parameter value
+     * @param defaultRegion the region of queue URLs that do not contain one
+     * @return the destinations in the order they were listed
+     */
+    public static List<SqsDestination> parse(final String value, final Region defaultRegion) {
+        final List<SqsDestination> destinations = new ArrayList<>();
+        if (value == null) {
+            return destinations;
+        }
+        for (String line : value.split("[,\\r\\n]+")) {
+            final String entry = line.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            final int separator = entry.indexOf('|');
+            final String queueUrl = separator < 0 ? entry : entry.substring(0, separator).trim();
+            final Policy policy = separator < 0 ? Policy.ALL : Policy.of(entry.substring(separator + 1));
+            final Region region = regionOf(queueUrl);
+            destinations.add(new SqsDestination(queueUrl, region != null ? region : defaultRegion, policy));
+        }
+        return destinations;
+    }
+
+    /**
+     * Reads the region from a queue URL such as {@code https://sqs.us-east-1.amazonaws.com/123456789012/queue}.
+     *
+     * @return the region, or null for URLs that do not contain one
+     */
+    public static Region regionOf(final String queueUrl) {
+        try {
+            final String host = URI.create(queueUrl).getHost();
+            final String[] labels = host != null ? host.split("\\.") : new String[0];
+            if (labels.length > 2 && "sqs".equals(labels[0])) {
+                return Region.of(labels[1]);
+            }
+            if (labels.length > 2 && "queue".equals(labels[1])) {
+                return Region.of(labels[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            Logger.warn(SqsDestination.class, "Invalid SQS queue URL: " + queueUrl);
+        }
+        return null;
+    }
+
+    /**
+     * The queue with the same name and account in another region. URLs without a region, e.g. of a
+     * local endpoint, are kept as they are.
+     *
+     * @param other the region to fail over to
+     * @return the destination in {@code other}
+     */
+    public SqsDestination inRegion(final Region other) {
+        final Region current = regionOf(queueUrl);
+        final String url = current != null
+                ? queueUrl.replaceFirst("(?<=[/.])" + Pattern.quote(current.id()) + "(?=\\.)", other.id())
+                : queueUrl;
+        return new SqsDestination(url, other, policy);
+    }
+
+    @Override
+    public String toString() {
+        return queueUrl + "|" + policy.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
@@ -0,0 +1,17 @@
+package com.dotcms.plugin.sqs;
+
+import software.amazon.awssdk.services.sqs.model.Message;
+
+/**
+ * Applies a message received by a {@link SqsQueueConsumer}. A message is deleted from its queue once
+ * the handler returns normally; when the handler throws, the message becomes visible again after
+ * its visibility timeout and is redelivered, or moved to the queue's dead letter queue by its redrive policy.
+ */
+public interface SqsMessageHandler {
+
+    /**
+     * @param message the received message, with its attributes
+     * @throws Exception if the message could not be applied
+     */
+    void handle(Message message) throws Exception;
+}
@@ -0,0 +1,572 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.portlets.workflows.model.WorkflowActionFailureException;
+import com.dotmarketing.util.Config;
+import com.dotmarketing.util.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+/**
+ * The send path of {@link SqsMessageSenderActionlet}: encodes a message, asks the queue's guard and
+ * sends it synchronously, through the async or batch dispatcher, or via the outbox, to one queue or
+ * fanned out to several. The actionlet turns its parameters and the contentlet into an
+ * {@link OutgoingMessage}; everything after that happens here. The services are passed in, so the
+ * send path also runs without a workflow, e.g. in the load generator.
+ */
+public class SqsMessageSender {
+
+    private final SqsClientRegistry clientRegistry;
+    private final String endpoint;
+    private final SendGuardRegistry sendGuards;
+    private final PayloadPipeline payloadPipeline;
+    private final SqsMetrics metrics;
+    private final SqsAsyncDispatcher asyncDispatcher;
+    private final SqsBatchDispatcher batchDispatcher;
+    private final OutboxRelay outboxRelay;
+    private final boolean spoolWhenUnavailable;
+    private final Duration sendTimeout;
+
+    /**
+     * @param clientRegistry       the shared clients
+     * @param endpoint             an optional SQS endpoint override, may be null
+     * @param sendGuards           the per-queue and per-site guards
+     * @param payloadPipeline      compresses or offloads large bodies
+     * @param metrics              records the stage latencies and payload sizes
+     * @param asyncDispatcher      sends async messages, may be null if the async mode is not used
+     * @param batchDispatcher      sends batched messages, may be null if the batch mode is not used
+     * @param outboxRelay          the outbox, or null when it is unavailable
+     * @param spoolWhenUnavailable whether a message refused by its guard goes to the outbox instead
+     * @param sendTimeout          how long a synchronous send waits for SQS before the action fails
+     */
+    public SqsMessageSender(final SqsClientRegistry clientRegistry, final String endpoint, final SendGuardRegistry sendGuards,
+                    final PayloadPipeline payloadPipeline, final SqsMetrics metrics, final SqsAsyncDispatcher asyncDispatcher,
+                    final SqsBatchDispatcher batchDispatcher, final OutboxRelay outboxRelay, final boolean spoolWhenUnavailable,
+                    final Duration sendTimeout) {
+        this.clientRegistry = clientRegistry;
+        this.endpoint = endpoint;
+        this.sendGuards = sendGuards;
+        this.payloadPipeline = payloadPipeline;
+        this.metrics = metrics;
+        this.asyncDispatcher = asyncDispatcher;
+        this.batchDispatcher = batchDispatcher;
+        this.outboxRelay = outboxRelay;
+        this.spoolWhenUnavailable = spoolWhenUnavailable;
+        this.sendTimeout = sendTimeout;
+    }
+
+    /**
+     * Creates a sender on the services started by the {@link Activator}.
+     *
+     * @return a new sender
+     */
+    static SqsMessageSender fromServices() {
+        return new SqsMessageSender(SqsServices.clientRegistry(), null, SqsServices.sendGuards(),
+                SqsServices.payloadPipeline(), SqsServices.metrics(), SqsServices.asyncDispatcher(),
+                SqsServices.batchDispatcher(), SqsServices.isOutboxAvailable() ? SqsServices.outboxRelay() : null,
+                Config.getBooleanProperty("AWS_SQS_SPOOL_WHEN_UNAVAILABLE", true),
+                Duration.ofSeconds(Config.getIntProperty("AWS_SQS_SEND_TIMEOUT_SECONDS", 60)));
+    }
+
+    /**
+     * Sends the message to its queue in the message's send mode, and waits for SQS unless the mode
+     * is async or outbox.
+     *
+     * @param message the message
+     * @throws WorkflowActionFailureException when the queue is unavailable or the client cannot be built
+     * @throws Exception                      when SQS fails the send
+     */
+    public void send(final OutgoingMessage message) throws Exception {
+        SqsClient client = null;
+        SqsAsyncClient asyncClient = null;
+        try {
+            // Reuse the pooled client for this region and credentials.
+            // In outbox mode the relay resolves its own client when it drains the message.
+            long clientStart = System.nanoTime();
+            if (message.async || message.batch) {
+                asyncClient = clientRegistry.getAsyncClient(message.region, message.appConfig, endpoint);
+            } else if (!message.outbox) {
+                client = clientRegistry.getClient(message.region, message.appConfig, endpoint);
+            }
+            metrics.recordStage(SqsMetrics.Stage.CLIENT_ACQUIRE, clientStart);
+        } catch (Exception e) {
+            Logger.error(this, "Error initializing SQS client: " + e.getMessage(), e);
+            throw new WorkflowActionFailureException("Error initializing SQS client: " + e.getMessage() + ". Region: " + message.region);
+        }
+        await(send(message.to(message.queueUrl, message.region, client, asyncClient, null, true)));
+    }
+
+    /**
+     * Sends the message to every destination in parallel and waits only for the ones whose policy
+     * requires it, so the action takes as long as the slowest required destination. The body is
+     * encoded once per region. A destination that is unavailable in its own region is sent to the
+     * same queue in the failover region.
+     *
+     * @param message        the message; its queue and region are replaced by those of each destination
+     * @param destinations   the queues
+     * @param failoverRegion the region to fail over to, may be null
+     */
+    public void fanOut(final OutgoingMessage message, final List<SqsDestination> destinations, final Region failoverRegion) throws Exception {
+        final Map<Region, PayloadPipeline.EncodedPayload> payloads = new ConcurrentHashMap<>();
+        final List<CompletableFuture<String>> required = new ArrayList<>();
+        final List<CompletableFuture<String>> anyOf = new ArrayList<>();
+
+        for (SqsDestination destination : destinations) {
+            CompletableFuture<String> result = sendWithFailover(message, destination, failoverRegion, payloads);
+            switch (destination.policy) {
+                case ALL:
+                    required.add(result);
+                    break;
+                case ANY:
+                    anyOf.add(result);
+                    break;
+                default:
+                    result.whenComplete((messageId, e) -> {
+                        if (e != null) {
+                            Logger.warn(this, "Best-effort send to SQS failed: " + e.getMessage() + ". Queue: " + destination.queueUrl);
+                        }
+                    });
+                    break;
+            }
+        }
+        if (!anyOf.isEmpty()) {
+            required.add(firstSuccessful(anyOf));
+        }
+        await(CompletableFuture.allOf(required.toArray(new CompletableFuture[0])));
+        Logger.debug(this, "Message sent to " + destinations.size() + " SQS destinations");
+    }
+
+    private CompletableFuture<String> sendWithFailover(final OutgoingMessage message, final SqsDestination destination,
+                                                       final Region failoverRegion,
+                                                       final Map<Region, PayloadPipeline.EncodedPayload> payloads) {
+        final boolean failover = failoverRegion != null && !failoverRegion.equals(destination.region);
+        // With a failover region the primary must not spool to the outbox; the failover comes first
+        final CompletableFuture<String> primary = attempt(() -> send(toDestination(message, destination, payloads, !failover)));
+        return primary.<CompletableFuture<String>>handle((messageId, e) -> {
+            if (e == null) {
+                return CompletableFuture.completedFuture(messageId);
+            }
+            if (!failover || !isEndpointFailure(e)) {
+                return CompletableFuture.<String>failedFuture(withQueue(e, destination.queueUrl));
+            }
+            final SqsDestination secondary = destination.inRegion(failoverRegion);
+            Logger.warn(this, "SQS queue unavailable in " + destination.region + " (" + e.getMessage() + "), failing over to: " + secondary.queueUrl);
+            return attempt(() -> send(toDestination(message, secondary, payloads, true)))
+                    .handle((failoverMessageId, failoverError) -> {
+                        if (failoverError != null) {
+                            throw new CompletionException(withQueue(failoverError, secondary.queueUrl));
+                        }
+                        return failoverMessageId;
+                    });
+        }).thenCompose(Function.identity());
+    }
+
+    private OutgoingMessage toDestination(final OutgoingMessage message, final SqsDestination destination,
+                                          final Map<Region, PayloadPipeline.EncodedPayload> payloads,
+                                          final boolean spoolWhenUnavailable) throws Exception {
+        PayloadPipeline.EncodedPayload payload = payloads.get(destination.region);
+        if (payload == null) {
+            payload = encode(message, destination.region);
+            payloads.putIfAbsent(destination.region, payload);
+        }
+        // Outbox entries are sent by the relay, which resolves its own client
+        SqsAsyncClient client = null;
+        if (!message.outbox) {
+            long clientStart = System.nanoTime();
+            client = clientRegistry.getAsyncClient(destination.region, message.appConfig, endpoint);
+            metrics.recordStage(SqsMetrics.Stage.CLIENT_ACQUIRE, clientStart);
+        }
+        return message.to(destination.queueUrl, destination.region, null, client, payload, spoolWhenUnavailable);
+    }
+
+    /**
+     * Encodes the message and sends it in the requested mode. Runs on the workflow thread, or on a
+     * coalescer thread when the message was held.
+     *
+     * @return completes with the message id once SQS accepted the message, or right away for the
+     * async and outbox modes
+     */
+    private CompletableFuture<String> send(final SendableMessage message) throws Exception {
+        // Compress or offload the body if it is too large
+        PayloadPipeline.EncodedPayload payload = message.payload != null ? message.payload : encode(message, message.region);
+
+        // Create send message request
+        boolean fifo = FifoMessageIds.isFifoQueue(message.queueUrl);
+        SendMessageRequest sendMsgRequest = SendMessageRequest.builder()
+            .queueUrl(message.queueUrl)
+            .messageBody(payload.body)
+            .messageAttributes(MessageAttributeSchema.merge(payload.attributes, message.attributes))
+            .delaySeconds(fifo ? null : message.delaySeconds)
+            .messageGroupId(fifo ? message.messageGroupId : null)
+            .messageDeduplicationId(fifo ? message.messageDeduplicationId : null)
+            .build();
+
+        // Write the message to the local outbox; the relay delivers it even if SQS is down right now
+        if (message.outbox) {
+            outbox().append(new OutboxEntry(message.region.id(), sendMsgRequest, message.appConfig.hostId));
+            Logger.debug(this, "Message written to AWS SQS outbox for queue: " + message.queueUrl);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Fast-fail, or spool to the outbox, while the queue's breaker is open or its or the site's rate is exceeded
+        SendGuard guard = sendGuards.forQueue(message.queueUrl);
+        SendGuard.Permit permit = guard.acquire(sendGuards.forTenant(message.appConfig.hostId, message.appConfig.maxSendRate));
+        if (permit != SendGuard.Permit.GRANTED) {
+            if (message.spoolWhenUnavailable && outboxRelay != null && spoolWhenUnavailable) {
+                outboxRelay.append(new OutboxEntry(message.region.id(), sendMsgRequest, message.appConfig.hostId));
+                Logger.warn(this, "SQS queue unavailable (" + permit + "), message written to outbox. Queue: " + message.queueUrl);
+                return CompletableFuture.completedFuture(null);
+            }
+            throw new WorkflowActionFailureException("SQS queue temporarily unavailable (" + permit + "). Queue: " + message.queueUrl);
+        }
+
+        // Add the message to the pending batch of its queue
+        if (message.batch) {
+            CompletableFuture<String> result;
+            try {
+                result = batchDispatcher.submit(message.sqsAsyncClient, sendMsgRequest, message.appConfig);
+            } catch (RuntimeException e) {
+                guard.release();
+                throw e;
+            }
+            // A batch that was never sent reports no outcome; one that was has already recorded it
+            result.whenComplete((messageId, e) -> {
+                if (e != null) {
+                    guard.release();
+                }
+            });
+            return message.async ? CompletableFuture.completedFuture(null) : result;
+        }
+
+        // Hand the message to the dispatcher and return without waiting for SQS
+        if (message.async) {
+            boolean queued = false;
+            try {
+                queued = asyncDispatcher.submit(message.sqsAsyncClient, sendMsgRequest, message.queueFullPolicy);
+            } finally {
+                // Dropped or refused by a full dispatch queue, so the dispatcher will not report an outcome
+                if (!queued) {
+                    guard.release();
+                }
+            }
+            if (queued) {
+                Logger.debug(this, "Message queued for async send to SQS queue: " + message.queueUrl);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long sendStart = System.nanoTime();
+
+        // Fan-out sends in parallel on the async client
+        if (message.sqsClient == null) {
+            CompletableFuture<SendMessageResponse> sent;
+            try {
+                sent = message.sqsAsyncClient.sendMessage(sendMsgRequest);
+            } catch (Exception e) {
+                guard.onFailure(e, sendStart);
+                throw e;
+            }
+            return sent.handle((response, e) -> {
+                if (e != null) {
+                    guard.onFailure(e, sendStart);
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                }
+                guard.onSuccess(sendStart);
+                return response.messageId();
+            });
+        }
+
+        // Send message to SQS queue
+        SendMessageResponse response;
+        try {
+            response = message.sqsClient.sendMessage(sendMsgRequest);
+            guard.onSuccess(sendStart);
+        } catch (Exception e) {
+            guard.onFailure(e, sendStart);
+            throw e;
+        }
+        Logger.debug(this, "Message sent to SQS queue. MessageId: " + response.messageId());
+        return CompletableFuture.completedFuture(response.messageId());
+    }
+
+    private OutboxRelay outbox() {
+        if (outboxRelay == null) {
+            throw new IllegalStateException("AWS SQS outbox is not available");
+        }
+        return outboxRelay;
+    }
+
+    private PayloadPipeline.EncodedPayload encode(final OutgoingMessage message, final Region region) throws Exception {
+        long encodeStart = System.nanoTime();
+        PayloadPipeline.EncodedPayload payload = payloadPipeline.encode(message.body, message.appConfig, region);
+        metrics.recordStageNanos(SqsMetrics.Stage.SERIALIZATION, message.serializationNanos + System.nanoTime() - encodeStart);
+        metrics.recordPayloadSize(payload.body.length());
+        return payload;
+    }
+
+    /**
+     * Waits for a send and rethrows its failure as it is.
+     */
+    private <T> T await(final CompletableFuture<T> result) throws Exception {
+        try {
+            return result.get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (TimeoutException e) {
+            // The send carries on in the background; only the workflow stops waiting for it
+            throw new WorkflowActionFailureException("No answer from SQS within " + sendTimeout.getSeconds() + " seconds");
+        }
+    }
+
+    private static CompletableFuture<String> attempt(final Callable<CompletableFuture<String>> send) {
+        try {
+            return send.call();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Completes with the first destination that succeeds, or fails once all of them have failed.
+     */
+    private static CompletableFuture<String> firstSuccessful(final List<CompletableFuture<String>> results) {
+        final CompletableFuture<String> first = new CompletableFuture<>();
+        final AtomicInteger remaining = new AtomicInteger(results.size());
+        for (CompletableFuture<String> result : results) {
+            result.whenComplete((messageId, e) -> {
+                if (e == null) {
+                    first.complete(messageId);
+                } else if (remaining.decrementAndGet() == 0) {
+                    first.completeExceptionally(e);
+                }
+            });
+        }
+        return first;
+    }
+
+    /**
+     * Whether the send failed because the queue's endpoint is unhealthy, as opposed to a problem with
+     * the message itself. Only those failures are worth retrying in another region.
+     */
+    static boolean isEndpointFailure(final Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof WorkflowActionFailureException) {
+            // Refused by the send guard: breaker open or rate exceeded
+            return true;
+        }
+        if (cause instanceof AwsServiceException) {
+            return ((AwsServiceException) cause).statusCode() >= 500 || SendGuard.isThrottling(cause);
+        }
+        return cause instanceof SdkClientException;
+    }
+
+    private static Exception withQueue(final Throwable error, final String queueUrl) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof WorkflowActionFailureException) {
+            return (WorkflowActionFailureException) cause;
+        }
+        return new WorkflowActionFailureException("Failed to send message to SQS: " + cause.getMessage() + ". Queue: " + queueUrl);
+    }
+
+    /**
+     * A message and its send mode, resolved from the actionlet parameters and the contentlet.
+     */
+    public static class OutgoingMessage {
+        final String queueUrl;
+        final Region region;
+        final AppConfig appConfig;
+        final String body;
+        final long serializationNanos;
+        final int delaySeconds;
+        final String messageGroupId;
+        final String messageDeduplicationId;
+        final Map<String, MessageAttributeValue> attributes;
+        final boolean async;
+        final boolean batch;
+        final boolean outbox;
+        final SqsAsyncDispatcher.QueueFullPolicy queueFullPolicy;
+
+        private OutgoingMessage(final Builder builder) {
+            this.queueUrl = builder.queueUrl;
+            this.region = builder.region;
+            this.appConfig = builder.appConfig;
+            this.body = builder.body;
+            this.serializationNanos = builder.serializationNanos;
+            this.delaySeconds = builder.delaySeconds;
+            this.messageGroupId = builder.messageGroupId;
+            this.messageDeduplicationId = builder.messageDeduplicationId;
+            this.attributes = builder.attributes;
+            this.async = builder.async;
+            this.batch = builder.batch;
+            this.outbox = builder.outbox;
+            this.queueFullPolicy = builder.queueFullPolicy;
+        }
+
+        private OutgoingMessage(final OutgoingMessage message, final String queueUrl, final Region region) {
+            this.queueUrl = queueUrl;
+            this.region = region;
+            this.appConfig = message.appConfig;
+            this.body = message.body;
+            this.serializationNanos = message.serializationNanos;
+            this.delaySeconds = message.delaySeconds;
+            this.messageGroupId = message.messageGroupId;
+            this.messageDeduplicationId = message.messageDeduplicationId;
+            this.attributes = message.attributes;
+            this.async = message.async;
+            this.batch = message.batch;
+            this.outbox = message.outbox;
+            this.queueFullPolicy = message.queueFullPolicy;
+        }
+
+        /**
+         * The message for one queue, with the clients and encoded body to send it with.
+         */
+        SendableMessage to(final String queueUrl, final Region region, final SqsClient sqsClient,
+                           final SqsAsyncClient sqsAsyncClient, final PayloadPipeline.EncodedPayload payload,
+                           final boolean spoolWhenUnavailable) {
+            return new SendableMessage(this, queueUrl, region, sqsClient, sqsAsyncClient, payload, spoolWhenUnavailable);
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static final class Builder {
+            private String queueUrl;
+            private Region region;
+            private AppConfig appConfig;
+            private String body;
+            private long serializationNanos;
+            private int delaySeconds;
+            private String messageGroupId;
+            private String messageDeduplicationId;
+            private Map<String, MessageAttributeValue> attributes = Collections.emptyMap();
+            private boolean async;
+            private boolean batch;
+            private boolean outbox;
+            private SqsAsyncDispatcher.QueueFullPolicy queueFullPolicy = SqsAsyncDispatcher.QueueFullPolicy.BLOCK;
+
+            private Builder() {}
+
+            public Builder queueUrl(String queueUrl) {
+                this.queueUrl = queueUrl;
+                return this;
+            }
+
+            public Builder region(Region region) {
+                this.region = region;
+                return this;
+            }
+
+            public Builder appConfig(AppConfig appConfig) {
+                this.appConfig = appConfig;
+                return this;
+            }
+
+            public Builder body(String body) {
+                this.body = body;
+                return this;
+            }
+
+            /**
+             * @param serializationNanos time spent building the body, recorded together with its encoding
+             */
+            public Builder serializationNanos(long serializationNanos) {
+                this.serializationNanos = serializationNanos;
+                return this;
+            }
+
+            public Builder delaySeconds(int delaySeconds) {
+                this.delaySeconds = delaySeconds;
+                return this;
+            }
+
+            public Builder messageGroupId(String messageGroupId) {
+                this.messageGroupId = messageGroupId;
+                return this;
+            }
+
+            public Builder messageDeduplicationId(String messageDeduplicationId) {
+                this.messageDeduplicationId = messageDeduplicationId;
+                return this;
+            }
+
+            public Builder attributes(Map<String, MessageAttributeValue> attributes) {
+                this.attributes = attributes != null ? attributes : Collections.emptyMap();
+                return this;
+            }
+
+            public Builder async(boolean async) {
+                this.async = async;
+                return this;
+            }
+
+            public Builder batch(boolean batch) {
+                this.batch = batch;
+                return this;
+            }
+
+            public Builder outbox(boolean outbox) {
+                this.outbox = outbox;
+                return this;
+            }
+
+            public Builder queueFullPolicy(SqsAsyncDispatcher.QueueFullPolicy queueFullPolicy) {
+                this.queueFullPolicy = queueFullPolicy;
+                return this;
+            }
+
+            public OutgoingMessage build() {
+                return new OutgoingMessage(this);
+            }
+        }
+    }
+
+    /**
+     * A message bound to one queue, with everything {@link #send(SendableMessage)} needs.
+     */
+    private static final class SendableMessage extends OutgoingMessage {
+        final SqsClient sqsClient;
+        final SqsAsyncClient sqsAsyncClient;
+        /** The encoded body when it is shared by several destinations, otherwise null. */
+        final PayloadPipeline.EncodedPayload payload;
+        final boolean spoolWhenUnavailable;
+
+        SendableMessage(final OutgoingMessage message, final String queueUrl, final Region region,
+                        final SqsClient sqsClient, final SqsAsyncClient sqsAsyncClient,
+                        final PayloadPipeline.EncodedPayload payload, final boolean spoolWhenUnavailable) {
+            super(message, queueUrl, region);
+            this.sqsClient = sqsClient;
+            this.sqsAsyncClient = sqsAsyncClient;
+            this.payload = payload;
+            this.spoolWhenUnavailable = spoolWhenUnavailable;
+        }
+    }
+}
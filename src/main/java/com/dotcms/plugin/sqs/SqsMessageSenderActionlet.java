@@ -1,7 +1,6 @@
 package com.dotcms.plugin.sqs;
 
-import com.dotcms.security.apps.AppSecrets;
-import com.dotmarketing.business.APILocator;
+import com.dotmarketing.portlets.contentlet.model.Contentlet;
 import com.dotmarketing.portlets.workflows.actionlet.WorkFlowActionlet;
 import com.dotmarketing.portlets.workflows.model.WorkflowActionClassParameter;
 import com.dotmarketing.portlets.workflows.model.WorkflowActionFailureException;
@@ -9,22 +8,14 @@ import com.dotmarketing.portlets.workflows.model.WorkflowActionletParameter;
 import com.dotmarketing.portlets.workflows.model.WorkflowProcessor;
 import com.dotmarketing.util.Logger;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
-import com.dotcms.security.apps.AppsAPI;
-import com.dotcms.security.apps.Secret;
-
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 // AWS SQS Imports
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.sqs.SqsClient;
-import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
-import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
 import software.amazon.awssdk.services.sqs.model.SqsException;
 
 /**
@@ -40,15 +31,39 @@ public class SqsMessageSenderActionlet extends WorkFlowActionlet {
         List<WorkflowActionletParameter> params = new ArrayList<>();
 
         params.add(new WorkflowActionletParameter("queueUrl", "Queue URL",
-            "The complete URL of the SQS queue", true));
+            "The complete URL of the SQS queue. Separate several queues with commas, each optionally followed by |all, |any or |best-effort", true));
 
         params.add(new WorkflowActionletParameter("messageBody", "Message Body",
             "The content of the message to send. Leave empty to use the standard payload.", false));
 
+        params.add(new WorkflowActionletParameter("messageTemplate", "Fill in ${field} and ${field:json} placeholders in the Message Body (true/false)", "false", false));
+
+        params.add(new WorkflowActionletParameter("payloadFields", "Standard Payload Fields (comma separated, empty for all)", "", false));
+
+        params.add(new WorkflowActionletParameter("payloadExcludeFields", "Standard Payload Excluded Fields (comma separated)", "", false));
+
         params.add(new WorkflowActionletParameter("awsRegion", "AWS Region", "eu-north-1", true));
 
+        params.add(new WorkflowActionletParameter("failoverRegion", "Failover AWS Region (empty disables)", "", false));
+
         params.add(new WorkflowActionletParameter("delaySeconds", "Delay Seconds (0-900)", "0", false));
 
+        params.add(new WorkflowActionletParameter("async", "Send Asynchronously (true/false)", "false", false));
+
+        params.add(new WorkflowActionletParameter("batch", "Batch with other messages (true/false)", "false", false));
+
+        params.add(new WorkflowActionletParameter("outbox", "Write to durable outbox first (true/false)", "false", false));
+
+        params.add(new WorkflowActionletParameter("queueFullPolicy", "Async Queue Full Policy (block, drop, fail)", "block", false));
+
+        params.add(new WorkflowActionletParameter("messageGroupField", "FIFO Message Group Field", "identifier", false));
+
+        params.add(new WorkflowActionletParameter("coalesceWindowMillis", "Coalesce updates of the same content within (ms, 0 disables)", "0", false));
+
+        params.add(new WorkflowActionletParameter("messageAttributes", "Message Attributes (comma separated, e.g. contentType, site, language, action, user, field:name)", "contentType,site,language", false));
+
+        params.add(new WorkflowActionletParameter("traceContext", "Add traceparent and correlationId attributes (true/false)", "true", false));
+
         return params;
     }
 
@@ -59,7 +74,16 @@ public class SqsMessageSenderActionlet extends WorkFlowActionlet {
 
     @Override
     public String getHowTo() {
-        return "This actionlet sends a message to an AWS SQS queue. You need to specify the queue URL, message body and AWS region. You can optionally specify a delay in seconds for the message delivery.";
+        return "This actionlet sends a message to an AWS SQS queue. You need to specify the queue URL, message body and AWS region. You can optionally specify a delay in seconds for the message delivery."
+                + " Several queues can be given separated by commas; each can be followed by a success policy: |all (default) fails the action if the queue fails,"
+                + " |any succeeds once one of the |any queues has the message, and |best-effort only logs failures."
+                + " With a Failover AWS Region, a send to a queue whose endpoint is unavailable is repeated against the same queue in that region."
+                + " Leave the message body empty to send the standard JSON payload of the contentlet, limited with the payload field parameters,"
+                + " or set the template option to fill ${field} and ${field:json} placeholders in the body ($${ writes a literal ${)."
+                + " Message Attributes lists the attributes to add, e.g. contentType, site, language, action, user or field:name."
+                + " Send asynchronously returns without waiting for SQS, Batch groups messages into SendMessageBatch calls,"
+                + " and the outbox writes the message to a durable local log first so an SQS outage does not fail the workflow."
+                + " A coalesce window holds the message so only the newest version of content updated several times within the window is sent.";
     }
 
     @Override
@@ -67,10 +91,23 @@ public class SqsMessageSenderActionlet extends WorkFlowActionlet {
         // Declare variables at the method level so they're accessible in all blocks
         String queueUrl = null;
         String messageBody = null;
-        String standardPayload = processor.getContentlet().getMap().toString();
         String awsRegion = null;
         int delaySeconds = 0;
-        SqsClient sqsClient = null;
+        boolean async = false;
+        boolean batch = false;
+        boolean outbox = false;
+        boolean fifo = false;
+        long coalesceWindowMillis = 0;
+        List<SqsDestination> destinations = null;
+        Region failoverRegion = null;
+        boolean multiDestination = false;
+        String messageGroupId = null;
+        String messageDeduplicationId = null;
+        Map<String, MessageAttributeValue> messageAttributes = null;
+        AppConfig appConfig = null;
+        Region region = null;
+        SqsAsyncDispatcher.QueueFullPolicy queueFullPolicy = SqsAsyncDispatcher.QueueFullPolicy.BLOCK;
+        long serializationNanos = 0;
 
         try {
             // SECTION 1: Extract and process parameters
@@ -82,17 +119,34 @@ public class SqsMessageSenderActionlet extends WorkFlowActionlet {
 
                 awsRegion = params.get("awsRegion").getValue();
 
-                // Use standard message body if none provided
-                if (messageBody == null || messageBody.length() == 0) {
-                    messageBody = standardPayload;
-                }
-
                 // Do not send test.conf, instead throw an error
                 // It is a business decision what to do with test files. This is an example only.
-                if (standardPayload.contains("fileName=test.conf")) {
-                    throw new WorkflowActionFailureException("File name contains 'test' in the filename: " + messageBody);
+                Object fileName = processor.getContentlet().getMap().get("fileName");
+                if (fileName != null && "test.conf".equals(fileName.toString())) {
+                    throw new WorkflowActionFailureException("File name contains 'test' in the filename: " + fileName);
                 }
 
+                // Use standard message body if none provided, serialized only when needed
+                if (messageBody == null || messageBody.length() == 0) {
+                    long serializationStart = System.nanoTime();
+                    messageBody = ContentletPayloadSerializer.serialize(processor.getContentlet().getMap(),
+                            ContentletPayloadSerializer.parseFieldList(params.get("payloadFields") != null ? params.get("payloadFields").getValue() : null),
+                            ContentletPayloadSerializer.parseFieldList(params.get("payloadExcludeFields") != null ? params.get("payloadExcludeFields").getValue() : null));
+                    serializationNanos = System.nanoTime() - serializationStart;
+                } else if (params.get("messageTemplate") != null && Boolean.parseBoolean(params.get("messageTemplate").getValue())) {
+                    // Fill in ${field} placeholders; the template is compiled once per action
+                    long serializationStart = System.nanoTime();
+                    messageBody = MessageTemplate.forAction(params.get("messageBody").getActionClassId(), messageBody)
+                            .render(processor.getContentlet().getMap());
+                    serializationNanos = System.nanoTime() - serializationStart;
+                }
+
+                // Message attributes, read with extractors resolved once per action
+                messageAttributes = MessageAttributeSchema.forAction(params.get("queueUrl").getActionClassId(),
+                        params.get("messageAttributes") != null ? params.get("messageAttributes").getValue() : null,
+                        params.get("traceContext") != null && Boolean.parseBoolean(params.get("traceContext").getValue()))
+                        .extract(processor);
+
                 // Get optional delay seconds parameter
                 try {
                     if (params.get("delaySeconds") != null && params.get("delaySeconds").getValue() != null) {
@@ -108,97 +162,134 @@ public class SqsMessageSenderActionlet extends WorkFlowActionlet {
                     String delayValue = params.get("delaySeconds") != null ? params.get("delaySeconds").getValue() : "null";
                     Logger.warn(this, "Invalid delay seconds value: '" + delayValue + "'. Using default value 0. Error: " + e.getMessage());
                 }
-            } catch (Exception e) {
-                Logger.error(this, "Error processing parameters at line " + Thread.currentThread().getStackTrace()[1].getLineNumber() + ": " + e.getMessage(), e);
-                throw new WorkflowActionFailureException("Error processing parameters: " + e.getMessage() + ". Queue: " + queueUrl + ", Region: " + awsRegion);
-            }
 
-            // SECTION 2: Initialize SQS client
-            try {
-                // Initialize SQS client
-                Region region = Region.of(awsRegion);
-
-                Logger.info(this, "Retrieving AWS credentials from dotCMS app configuration");
+                // Get optional async send mode parameters
+                if (params.get("async") != null) {
+                    async = Boolean.parseBoolean(params.get("async").getValue());
+                }
+                if (params.get("batch") != null) {
+                    batch = Boolean.parseBoolean(params.get("batch").getValue());
+                }
+                if (params.get("outbox") != null) {
+                    outbox = Boolean.parseBoolean(params.get("outbox").getValue());
+                }
+                if (params.get("queueFullPolicy") != null) {
+                    queueFullPolicy = SqsAsyncDispatcher.QueueFullPolicy.of(params.get("queueFullPolicy").getValue());
+                }
 
+                // Hold repeated updates of the same contentlet and only send the newest one
                 try {
-                    // Get the app service
-                    AppsAPI appsAPI = APILocator.getAppsAPI();
-
-                    // Get the AWS credentials from the app configuration
-                    Optional<AppSecrets> appSecrets = appsAPI.getSecrets(AppKeys.APP_KEY, APILocator.systemHost(), APILocator.systemUser());
-
-                    if (!appSecrets.isPresent()) {
-                        throw new IllegalStateException("AWS SQS app secrets not found. Please configure the AWS credentials in the dotCMS app configuration.");
+                    if (params.get("coalesceWindowMillis") != null && params.get("coalesceWindowMillis").getValue() != null
+                            && !params.get("coalesceWindowMillis").getValue().trim().isEmpty()) {
+                        coalesceWindowMillis = Math.max(0, Long.parseLong(params.get("coalesceWindowMillis").getValue().trim()));
                     }
+                } catch (NumberFormatException e) {
+                    Logger.warn(this, "Invalid coalesce window value: '" + params.get("coalesceWindowMillis").getValue() + "'. Coalescing disabled.");
+                }
+                if (coalesceWindowMillis > 0 && processor.getContentlet().getIdentifier() == null) {
+                    coalesceWindowMillis = 0;
+                }
+                // The held message is sent later, so the workflow never waits for it
+                if (coalesceWindowMillis > 0 && !outbox) {
+                    async = true;
+                }
 
-                    // Get the app configuration from the secrets
-                    Map<String, Secret> secretsMap = appSecrets.get().getSecrets();
-
-                    // Get the AWS credentials from the secrets map
-                    Secret accessKeySecret = secretsMap.get(AppKeys.AWS_ACCESS_KEY.key);
-                    Secret secretKeySecret = secretsMap.get(AppKeys.AWS_SECRET_KEY.key);
+                // Every queue the message goes to. Several queues, or a failover region, are sent to in parallel.
+                destinations = SqsDestination.parse(queueUrl, Region.of(awsRegion));
+                if (destinations.isEmpty()) {
+                    throw new WorkflowActionFailureException("No SQS queue URL configured");
+                }
+                if (params.get("failoverRegion") != null && params.get("failoverRegion").getValue() != null
+                        && !params.get("failoverRegion").getValue().trim().isEmpty()) {
+                    failoverRegion = Region.of(params.get("failoverRegion").getValue().trim());
+                }
+                multiDestination = destinations.size() > 1 || failoverRegion != null;
+                if (!multiDestination) {
+                    queueUrl = destinations.get(0).queueUrl;
+                }
 
-                    if (secretsMap == null || secretsMap.isEmpty()) {
-                        throw new IllegalStateException("AWS SQS app configuration is empty. Please check the app configuration.");
+                // FIFO queues need a message group and a deduplication id
+                fifo = destinations.stream().anyMatch(destination -> FifoMessageIds.isFifoQueue(destination.queueUrl));
+                if (fifo) {
+                    Contentlet contentlet = processor.getContentlet();
+                    String groupField = params.get("messageGroupField") != null ? params.get("messageGroupField").getValue() : null;
+                    if (groupField == null || groupField.trim().isEmpty()) {
+                        groupField = "identifier";
                     }
+                    messageGroupId = FifoMessageIds.groupId(contentlet.getMap().get(groupField.trim()), contentlet.getIdentifier());
+                    messageDeduplicationId = FifoMessageIds.deduplicationId(contentlet.getIdentifier(), contentlet.getInode(), contentlet.getModDate());
 
-                    String awsAccessKey = accessKeySecret != null ? new String(accessKeySecret.getValue()) : null;
-                    String awsSecretKey = secretKeySecret != null ? new String(secretKeySecret.getValue()) : null;
-
-                    if (awsAccessKey == null || awsAccessKey.isEmpty()) {
-                        throw new IllegalStateException("AWS Access Key is missing or empty. Please configure it in the dotCMS app configuration.");
+                    // FIFO queues only support a queue-level delay
+                    if (delaySeconds != 0) {
+                        Logger.warn(this, "Delay seconds are not supported by FIFO queues, ignoring " + delaySeconds + ". Queue: " + queueUrl);
                     }
-
-                    if (awsSecretKey == null || awsSecretKey.isEmpty()) {
-                        throw new IllegalStateException("AWS Secret Key is missing or empty. Please configure it in the dotCMS app configuration.");
+                    // The async dispatcher sends concurrently; the batch dispatcher keeps each group in order
+                    if (async && !batch) {
+                        batch = true;
                     }
+                }
+            } catch (Exception e) {
+                Logger.error(this, "Error processing parameters at line " + Thread.currentThread().getStackTrace()[1].getLineNumber() + ": " + e.getMessage(), e);
+                throw new WorkflowActionFailureException("Error processing parameters: " + e.getMessage() + ". Queue: " + queueUrl + ", Region: " + awsRegion);
+            }
 
-                    // Log partial key for debugging (never log full secret keys)
-                    Logger.info(this, "Using AWS access key: " + awsAccessKey.substring(0, Math.min(4, awsAccessKey.length())) + "...");
-
-                    AwsCredentialsProvider credentialsProvider = StaticCredentialsProvider.create(
-                        AwsBasicCredentials.create(awsAccessKey, awsSecretKey)
-                    );
+            // SECTION 2: Resolve the App configuration
+            try {
+                region = Region.of(awsRegion);
 
-                    sqsClient = SqsClient.builder()
-                        .region(region)
-                        .credentialsProvider(credentialsProvider)
-                        .build();
-                } catch (Exception e) {
-                    Logger.error(this, "Error initializing SQS client at line " + Thread.currentThread().getStackTrace()[1].getLineNumber() + ": " + e.getMessage(), e);
-                    throw new WorkflowActionFailureException("Error initializing SQS client: " + e.getMessage() + ". Region: " + awsRegion);
-                }
+                // Resolve the credentials of the contentlet's site from the in-memory App configuration cache.
+                // The sender builds or reuses the pooled client for them.
+                long credentialStart = System.nanoTime();
+                appConfig = SqsServices.appConfigCache().get(processor.getContentlet().getHost());
+                SqsServices.metrics().recordStage(SqsMetrics.Stage.CREDENTIAL_LOOKUP, credentialStart);
             } catch (Exception e) {
+                Logger.error(this, "Error initializing SQS client at line " + Thread.currentThread().getStackTrace()[1].getLineNumber() + ": " + e.getMessage(), e);
                 throw new WorkflowActionFailureException("Error initializing SQS client: " + e.getMessage() + ". Region: " + awsRegion);
             }
 
             // SECTION 3: Send message to SQS
-            try {
-                // Create send message request
-                SendMessageRequest sendMsgRequest = SendMessageRequest.builder()
+            final SqsMessageSender.OutgoingMessage message = SqsMessageSender.OutgoingMessage.builder()
                     .queueUrl(queueUrl)
-                    .messageBody(messageBody)
+                    .region(region)
+                    .appConfig(appConfig)
+                    .body(messageBody)
+                    .serializationNanos(serializationNanos)
                     .delaySeconds(delaySeconds)
+                    .messageGroupId(messageGroupId)
+                    .messageDeduplicationId(messageDeduplicationId)
+                    .attributes(messageAttributes)
+                    .async(async)
+                    .batch(batch)
+                    .outbox(outbox)
+                    .queueFullPolicy(queueFullPolicy)
                     .build();
+            final SqsMessageSender sender = SqsServices.messageSender();
+            final List<SqsDestination> sendTo = destinations;
+            final Region sendFailoverRegion = failoverRegion;
+            try {
+                // Hold the message; a newer version of the same contentlet within the window replaces it
+                if (coalesceWindowMillis > 0) {
+                    Contentlet contentlet = processor.getContentlet();
+                    SqsServices.coalescer().submit(queueUrl + "|" + contentlet.getIdentifier() + "|" + contentlet.getLanguageId(),
+                            Duration.ofMillis(coalesceWindowMillis),
+                            multiDestination ? () -> sender.fanOut(message, sendTo, sendFailoverRegion) : () -> sender.send(message));
+                    Logger.debug(this, "Message held for coalescing. Queue: " + queueUrl);
+                    return;
+                }
 
-                // Send message to SQS queue
-                SendMessageResponse response = sqsClient.sendMessage(sendMsgRequest);
-                Logger.info(this, "Message sent to SQS queue. MessageId: " + response.messageId());
+                if (multiDestination) {
+                    sender.fanOut(message, sendTo, sendFailoverRegion);
+                } else {
+                    sender.send(message);
+                }
+            } catch (WorkflowActionFailureException e) {
+                throw e;
             } catch (SqsException e) {
                 Logger.error(this, "Error sending message to SQS at line " + Thread.currentThread().getStackTrace()[1].getLineNumber() + ": " + e.getMessage() + ". Queue: " + queueUrl, e);
                 throw new WorkflowActionFailureException("Failed to send message to SQS: " + e.getMessage() + ". Queue: " + queueUrl);
             } catch (Exception e) {
                 Logger.error(this, "Unexpected error sending message at line " + Thread.currentThread().getStackTrace()[1].getLineNumber() + ": " + e.getMessage() + ". Queue: " + queueUrl, e);
                 throw new WorkflowActionFailureException("Unexpected error sending message: " + e.getMessage() + ". Queue: " + queueUrl);
-            } finally {
-                // Close the SQS client if it was created
-                if (sqsClient != null) {
-                    try {
-                        sqsClient.close();
-                    } catch (Exception e) {
-                        Logger.warn(this, "Error closing SQS client: " + e.getMessage());
-                    }
-                }
             }
         } catch (WorkflowActionFailureException e) {
             // Re-throw workflow exceptions that we've already created
@@ -0,0 +1,348 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Hot-path metrics of the plugin: latency histograms per stage of {@code executeAction}, per-queue
+ * outcome counters and the payload size distribution. Latencies are kept in microseconds. Other
+ * services register the counters and gauges they keep themselves, which are read on export. The
+ * metrics are exported as JSON and Prometheus text through {@link SqsPluginResource} and over JMX.
+ */
+public class SqsMetrics implements SqsMetricsMBean {
+
+    static final String OBJECT_NAME = "com.dotcms.plugin.sqs:type=Metrics";
+
+    /**
+     * Stages of a send that are timed separately.
+     */
+    public enum Stage {
+        CREDENTIAL_LOOKUP, CLIENT_ACQUIRE, SERIALIZATION, SQS_ROUND_TRIP
+    }
+
+    /**
+     * Outcome counters of one queue URL.
+     */
+    public static final class QueueMetrics {
+        final LongAdder success = new LongAdder();
+        final LongAdder failure = new LongAdder();
+        final LongAdder throttled = new LongAdder();
+        final LatencyHistogram roundTrip = new LatencyHistogram();
+        final LatencyHistogram allQueuesRoundTrip;
+
+        QueueMetrics(final LatencyHistogram allQueuesRoundTrip) {
+            this.allQueuesRoundTrip = allQueuesRoundTrip;
+        }
+
+        public void onSuccess(final long startNanos, final int messages) {
+            success.add(messages);
+            recordRoundTrip(startNanos);
+        }
+
+        public void onFailure(final boolean throttling, final long startNanos, final int messages) {
+            if (throttling) {
+                throttled.add(messages);
+            } else {
+                failure.add(messages);
+            }
+            recordRoundTrip(startNanos);
+        }
+
+        private void recordRoundTrip(final long startNanos) {
+            final long elapsed = micros(startNanos);
+            roundTrip.record(elapsed);
+            allQueuesRoundTrip.record(elapsed);
+        }
+
+        Map<String, Object> toMap() {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("success", success.sum());
+            map.put("failure", failure.sum());
+            map.put("throttled", throttled.sum());
+            map.put("roundTripMicros", roundTrip.toMap());
+            return map;
+        }
+    }
+
+    private final Map<Stage, LatencyHistogram> stages = new ConcurrentHashMap<>();
+    private final Map<String, QueueMetrics> queues = new ConcurrentHashMap<>();
+    private final LatencyHistogram payloadBytes = new LatencyHistogram();
+    private final Map<String, Reading> readings = new ConcurrentSkipListMap<>();
+
+    public SqsMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Records the time since {@code startNanos} for the given stage.
+     *
+     * @param stage      the stage
+     * @param startNanos a {@link System#nanoTime()} taken when the stage started
+     */
+    public void recordStage(final Stage stage, final long startNanos) {
+        stages.get(stage).record(micros(startNanos));
+    }
+
+    /**
+     * Records an elapsed time measured by the caller for the given stage.
+     *
+     * @param stage        the stage
+     * @param elapsedNanos the elapsed time in nanoseconds
+     */
+    public void recordStageNanos(final Stage stage, final long elapsedNanos) {
+        stages.get(stage).record(TimeUnit.NANOSECONDS.toMicros(elapsedNanos));
+    }
+
+    public void recordPayloadSize(final int bytes) {
+        payloadBytes.record(bytes);
+    }
+
+    /**
+     * Exports a counter kept by another service. The name is used as is in the JSON and prefixed
+     * with {@code dotsqs_} in the Prometheus text, so it should end in {@code _total}.
+     *
+     * @param name  the metric name, e.g. {@code config_cache_hits_total}
+     * @param value reads the current count
+     */
+    public void registerCounter(final String name, final DoubleSupplier value) {
+        readings.put(name, new Reading("counter", value));
+    }
+
+    /**
+     * Exports a gauge kept by another service, such as a queue depth.
+     *
+     * @param name  the metric name, e.g. {@code async_queue_depth}
+     * @param value reads the current value
+     */
+    public void registerGauge(final String name, final DoubleSupplier value) {
+        readings.put(name, new Reading("gauge", value));
+    }
+
+    /**
+     * @return the current value of a registered counter or gauge, or 0 if it is not registered
+     */
+    public double read(final String name) {
+        final Reading reading = readings.get(name);
+        return reading != null ? reading.value.getAsDouble() : 0;
+    }
+
+    public QueueMetrics forQueue(final String queueUrl) {
+        final QueueMetrics metrics = queues.get(queueUrl);
+        return metrics != null ? metrics : queues.computeIfAbsent(queueUrl, url -> new QueueMetrics(stages.get(Stage.SQS_ROUND_TRIP)));
+    }
+
+    public Map<String, Object> toMap() {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        final Map<String, Object> latency = new LinkedHashMap<>();
+        stages.forEach((stage, histogram) -> latency.put(stage.name().toLowerCase(), histogram.toMap()));
+        map.put("latencyMicros", latency);
+        map.put("payloadBytes", payloadBytes.toMap());
+        final Map<String, Object> perQueue = new LinkedHashMap<>();
+        queues.forEach((url, metrics) -> perQueue.put(url, metrics.toMap()));
+        map.put("queues", perQueue);
+        final Map<String, Object> services = new LinkedHashMap<>();
+        readings.forEach((name, reading) -> services.put(name, reading.export()));
+        map.put("services", services);
+        return map;
+    }
+
+    /**
+     * @return the metrics in the Prometheus text exposition format
+     */
+    public String toPrometheus() {
+        final StringBuilder out = new StringBuilder(2048);
+        out.append("# TYPE dotsqs_stage_latency_microseconds summary\n");
+        stages.forEach((stage, histogram) -> appendSummary(out, "dotsqs_stage_latency_microseconds",
+                "stage=\"" + stage.name().toLowerCase() + "\"", histogram));
+
+        out.append("# TYPE dotsqs_payload_bytes summary\n");
+        appendSummary(out, "dotsqs_payload_bytes", null, payloadBytes);
+
+        out.append("# TYPE dotsqs_messages_total counter\n");
+        queues.forEach((url, metrics) -> {
+            final String queue = "queue=\"" + escape(url) + "\"";
+            out.append("dotsqs_messages_total{").append(queue).append(",outcome=\"success\"} ").append(metrics.success.sum()).append('\n');
+            out.append("dotsqs_messages_total{").append(queue).append(",outcome=\"failure\"} ").append(metrics.failure.sum()).append('\n');
+            out.append("dotsqs_messages_total{").append(queue).append(",outcome=\"throttled\"} ").append(metrics.throttled.sum()).append('\n');
+        });
+
+        out.append("# TYPE dotsqs_round_trip_microseconds summary\n");
+        queues.forEach((url, metrics) -> appendSummary(out, "dotsqs_round_trip_microseconds",
+                "queue=\"" + escape(url) + "\"", metrics.roundTrip));
+
+        readings.forEach((name, reading) -> {
+            out.append("# TYPE dotsqs_").append(name).append(' ').append(reading.type).append('\n');
+            out.append("dotsqs_").append(name).append(' ').append(reading.export()).append('\n');
+        });
+        return out.toString();
+    }
+
+    void registerMBean() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (Exception e) {
+            Logger.warn(this, "Unable to register AWS SQS metrics MBean: " + e.getMessage());
+        }
+    }
+
+    void unregisterMBean() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            Logger.warn(this, "Unable to unregister AWS SQS metrics MBean: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return queues.values().stream().mapToLong(metrics -> metrics.success.sum()).sum();
+    }
+
+    @Override
+    public long getMessagesFailed() {
+        return queues.values().stream().mapToLong(metrics -> metrics.failure.sum()).sum();
+    }
+
+    @Override
+    public long getMessagesThrottled() {
+        return queues.values().stream().mapToLong(metrics -> metrics.throttled.sum()).sum();
+    }
+
+    @Override
+    public long getSendLatencyP50Micros() {
+        return stages.get(Stage.SQS_ROUND_TRIP).getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getSendLatencyP99Micros() {
+        return stages.get(Stage.SQS_ROUND_TRIP).getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getCredentialLookupP99Micros() {
+        return stages.get(Stage.CREDENTIAL_LOOKUP).getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getClientAcquireP99Micros() {
+        return stages.get(Stage.CLIENT_ACQUIRE).getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getSerializationP99Micros() {
+        return stages.get(Stage.SERIALIZATION).getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getPayloadSizeP99Bytes() {
+        return payloadBytes.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getConfigCacheHits() {
+        return (long) read("config_cache_hits_total");
+    }
+
+    @Override
+    public long getConfigCacheMisses() {
+        return (long) read("config_cache_misses_total");
+    }
+
+    @Override
+    public long getAsyncQueueDepth() {
+        return (long) read("async_queue_depth");
+    }
+
+    @Override
+    public long getAsyncDropped() {
+        return (long) read("async_dropped_total");
+    }
+
+    @Override
+    public long getAsyncFailed() {
+        return (long) read("async_failed_total");
+    }
+
+    @Override
+    public long getPayloadsCompressed() {
+        return (long) read("payload_compressed_total");
+    }
+
+    @Override
+    public long getPayloadsOffloaded() {
+        return (long) read("payload_offloaded_total");
+    }
+
+    @Override
+    public double getPayloadCompressionRatio() {
+        return read("payload_compression_ratio");
+    }
+
+    @Override
+    public String getPrometheusText() {
+        return toPrometheus();
+    }
+
+    private static void appendSummary(final StringBuilder out, final String name, final String labels,
+                    final LatencyHistogram histogram) {
+        final String prefix = labels != null ? labels + "," : "";
+        for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+            out.append(name).append('{').append(prefix).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getValueAtPercentile(quantile * 100)).append('\n');
+        }
+        final String suffix = labels != null ? "{" + labels + "}" : "";
+        out.append(name).append("_sum").append(suffix).append(' ').append(histogram.getSum()).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    /**
+     * A counter or gauge read from the service that keeps it.
+     */
+    private static final class Reading {
+        final String type;
+        final DoubleSupplier value;
+
+        Reading(final String type, final DoubleSupplier value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        /**
+         * Counters as whole numbers, gauges as they are.
+         */
+        Object export() {
+            final double current = value.getAsDouble();
+            return "counter".equals(type) ? (Object) (long) current : (Object) current;
+        }
+    }
+
+    private static String escape(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static long micros(final long startNanos) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    }
+}
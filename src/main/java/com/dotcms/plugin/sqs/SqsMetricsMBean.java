@@ -0,0 +1,43 @@
+package com.dotcms.plugin.sqs;
+
+/**
+ * JMX view of {@link SqsMetrics}, registered as {@value SqsMetrics#OBJECT_NAME}.
+ */
+public interface SqsMetricsMBean {
+
+    long getMessagesSent();
+
+    long getMessagesFailed();
+
+    long getMessagesThrottled();
+
+    long getSendLatencyP50Micros();
+
+    long getSendLatencyP99Micros();
+
+    long getCredentialLookupP99Micros();
+
+    long getClientAcquireP99Micros();
+
+    long getSerializationP99Micros();
+
+    long getPayloadSizeP99Bytes();
+
+    long getConfigCacheHits();
+
+    long getConfigCacheMisses();
+
+    long getAsyncQueueDepth();
+
+    long getAsyncDropped();
+
+    long getAsyncFailed();
+
+    long getPayloadsCompressed();
+
+    long getPayloadsOffloaded();
+
+    double getPayloadCompressionRatio();
+
+    String getPrometheusText();
+}
@@ -0,0 +1,125 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotcms.rest.ErrorEntity;
+import com.dotcms.rest.ResponseEntityView;
+import com.dotcms.rest.WebResource;
+import com.dotmarketing.util.Logger;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Admin endpoints of the AWS SQS plugin, registered by the {@link Activator} under {@code /api/v1/dotsqs}.
+ */
+@Path("/v1/dotsqs")
+public class SqsPluginResource {
+
+    private final WebResource webResource = new WebResource();
+
+    @GET
+    @Path("/outbox")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getOutboxStatus(@Context final HttpServletRequest request,
+                    @Context final HttpServletResponse response) {
+        init(request, response);
+        if (!SqsServices.isOutboxAvailable()) {
+            return outboxUnavailable();
+        }
+        return Response.ok(new ResponseEntityView<>(SqsServices.outboxRelay().getStatus())).build();
+    }
+
+    @GET
+    @Path("/guards")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getSendGuardStatus(@Context final HttpServletRequest request,
+                    @Context final HttpServletResponse response) {
+        init(request, response);
+        return Response.ok(new ResponseEntityView<>(SqsServices.sendGuards().getStatus())).build();
+    }
+
+    @GET
+    @Path("/consumers")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getConsumerStatus(@Context final HttpServletRequest request,
+                    @Context final HttpServletResponse response) {
+        init(request, response);
+        return Response.ok(new ResponseEntityView<>(SqsServices.consumers().getStatus())).build();
+    }
+
+    @GET
+    @Path("/coalescer")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCoalescerStatus(@Context final HttpServletRequest request,
+                    @Context final HttpServletResponse response) {
+        init(request, response);
+        return Response.ok(new ResponseEntityView<>(SqsServices.coalescer().getStatus())).build();
+    }
+
+    @GET
+    @Path("/metrics")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getMetrics(@Context final HttpServletRequest request,
+                    @Context final HttpServletResponse response) {
+        init(request, response);
+        return Response.ok(new ResponseEntityView<>(SqsServices.metrics().toMap())).build();
+    }
+
+    @GET
+    @Path("/metrics/prometheus")
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response getPrometheusMetrics(@Context final HttpServletRequest request,
+                    @Context final HttpServletResponse response) {
+        init(request, response);
+        return Response.ok(SqsServices.metrics().toPrometheus(), "text/plain; version=0.0.4").build();
+    }
+
+    @POST
+    @Path("/outbox/_replay")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response replayOutboxDeadLetters(@Context final HttpServletRequest request,
+                    @Context final HttpServletResponse response) {
+        init(request, response);
+        if (!SqsServices.isOutboxAvailable()) {
+            return outboxUnavailable();
+        }
+        try {
+            final Map<String, Object> result = Collections.singletonMap("replayed", SqsServices.outboxRelay().replayDeadLetters());
+            return Response.ok(new ResponseEntityView<>(result)).build();
+        } catch (Exception e) {
+            Logger.error(this, "Error replaying outbox dead letters: " + e.getMessage(), e);
+            return error(Response.Status.INTERNAL_SERVER_ERROR, "outbox-replay-failed",
+                    "Error replaying outbox dead letters: " + e.getMessage());
+        }
+    }
+
+    private static Response outboxUnavailable() {
+        return error(Response.Status.SERVICE_UNAVAILABLE, "outbox-unavailable",
+                "The AWS SQS outbox is not available, check AWS_SQS_OUTBOX_DIR and the dotCMS log");
+    }
+
+    private static Response error(final Response.Status status, final String code, final String message) {
+        return Response.status(status)
+                .entity(new ResponseEntityView<>(Collections.singletonList(new ErrorEntity(code, message))))
+                .build();
+    }
+
+    private void init(final HttpServletRequest request, final HttpServletResponse response) {
+        new WebResource.InitBuilder(webResource)
+                .requiredBackendUser(true)
+                .requiredFrontendUser(false)
+                .requireAdmin(true)
+                .requestAndResponse(request, response)
+                .rejectWhenNoUser(true)
+                .init();
+    }
+}
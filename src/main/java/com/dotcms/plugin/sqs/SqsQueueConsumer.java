@@ -0,0 +1,354 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+
+/**
+ * Long-polls one queue and hands the received messages to a {@link SqsMessageHandler} on a bounded
+ * worker pool. The poller only asks SQS for as many messages as there are idle workers, so nothing
+ * sits in a local buffer while its visibility timeout runs down. Handled messages are deleted with
+ * {@code DeleteMessageBatch}, and a heartbeat extends the visibility timeout of messages whose handler
+ * is still running.
+ */
+public class SqsQueueConsumer {
+
+    /** SQS returns at most ten messages per receive call. */
+    public static final int MAX_RECEIVE_MESSAGES = 10;
+
+    private final String queueUrl;
+    private final Supplier<SqsClient> clients;
+    private final SqsMessageHandler handler;
+    private final int concurrency;
+    private final int waitSeconds;
+    private final int visibilityTimeoutSeconds;
+    private final long maxProcessingNanos;
+    private final long ackLingerMillis;
+
+    private final Semaphore idleWorkers;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService scheduler;
+    private final Thread poller;
+    private final LinkedBlockingQueue<String> pendingAcks = new LinkedBlockingQueue<>();
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong handled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong deleted = new AtomicLong();
+    private final AtomicLong extended = new AtomicLong();
+
+    /**
+     * A consumer that uses the clients of the App configuration of a site.
+     *
+     * @param hostId the site whose App secrets are used, or null for the system host
+     */
+    public SqsQueueConsumer(final String queueUrl, final Region region, final String endpoint, final String hostId,
+                    final SqsMessageHandler handler, final int concurrency, final int waitSeconds,
+                    final int visibilityTimeoutSeconds, final Duration maxProcessingTime, final Duration ackLinger) {
+        this(queueUrl, () -> clientOf(region, hostId, endpoint), handler, concurrency, waitSeconds,
+                visibilityTimeoutSeconds, maxProcessingTime, ackLinger);
+    }
+
+    /**
+     * @param clients returns the client for every call, e.g. a fixed client outside of dotCMS
+     */
+    public SqsQueueConsumer(final String queueUrl, final Supplier<SqsClient> clients,
+                    final SqsMessageHandler handler, final int concurrency, final int waitSeconds,
+                    final int visibilityTimeoutSeconds, final Duration maxProcessingTime, final Duration ackLinger) {
+        this.queueUrl = queueUrl;
+        this.clients = clients;
+        this.handler = handler;
+        this.concurrency = Math.max(1, concurrency);
+        this.waitSeconds = Math.max(0, Math.min(20, waitSeconds));
+        this.visibilityTimeoutSeconds = Math.max(2, visibilityTimeoutSeconds);
+        this.maxProcessingNanos = maxProcessingTime.toNanos();
+        this.ackLingerMillis = Math.max(1, ackLinger.toMillis());
+        this.idleWorkers = new Semaphore(this.concurrency);
+
+        final String name = queueName(queueUrl);
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.concurrency, r -> {
+            Thread thread = new Thread(r, "dotsqs-consumer-" + name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dotsqs-consumer-" + name + "-ack");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::flushAcks, ackLingerMillis, ackLingerMillis, TimeUnit.MILLISECONDS);
+        final long heartbeat = Math.max(1, this.visibilityTimeoutSeconds / 3);
+        this.scheduler.scheduleWithFixedDelay(this::extendVisibility, heartbeat, heartbeat, TimeUnit.SECONDS);
+
+        this.poller = new Thread(this::pollLoop, "dotsqs-consumer-" + name + "-poller");
+        this.poller.setDaemon(true);
+        this.poller.start();
+        Logger.info(this, "Started SQS consumer for queue: " + queueUrl + " with " + this.concurrency + " workers");
+    }
+
+    public String getQueueUrl() {
+        return queueUrl;
+    }
+
+    public Map<String, Object> getStatus() {
+        final Map<String, Object> status = new LinkedHashMap<>();
+        status.put("queueUrl", queueUrl);
+        status.put("concurrency", concurrency);
+        status.put("inFlight", inFlight.size());
+        status.put("pendingAcks", pendingAcks.size());
+        status.put("received", received.get());
+        status.put("handled", handled.get());
+        status.put("failed", failed.get());
+        status.put("deleted", deleted.get());
+        status.put("visibilityExtended", extended.get());
+        return status;
+    }
+
+    /**
+     * Stops polling, lets the running handlers finish and deletes what they handled. Messages whose
+     * handler did not finish in time become visible again and are redelivered.
+     *
+     * @param timeout how long to wait for running handlers
+     */
+    public void shutdown(final Duration timeout) {
+        running = false;
+        // Aborts the long poll in progress instead of waiting up to 20 seconds for it to return
+        poller.interrupt();
+        try {
+            poller.join(5000);
+            workers.shutdown();
+            if (!workers.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                Logger.warn(this, "SQS consumer handlers did not finish in time, " + inFlight.size()
+                        + " messages will be redelivered. Queue: " + queueUrl);
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler.shutdownNow();
+        flushAcks();
+    }
+
+    private void pollLoop() {
+        while (running) {
+            try {
+                // Only receive what the idle workers can start on right away
+                idleWorkers.acquire();
+                final int available = 1 + idleWorkers.drainPermits();
+                final int requested = Math.min(MAX_RECEIVE_MESSAGES, available);
+                idleWorkers.release(available - requested);
+
+                final List<Message> messages;
+                try {
+                    messages = client().receiveMessage(ReceiveMessageRequest.builder()
+                            .queueUrl(queueUrl)
+                            .maxNumberOfMessages(requested)
+                            .waitTimeSeconds(waitSeconds)
+                            .visibilityTimeout(visibilityTimeoutSeconds)
+                            .messageAttributeNames("All")
+                            .attributeNamesWithStrings(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT.toString())
+                            // A long poll takes up to waitSeconds, which may be longer than the App's call timeouts
+                            .overrideConfiguration(o -> o
+                                    .apiCallTimeout(Duration.ofSeconds(waitSeconds + 10))
+                                    .apiCallAttemptTimeout(Duration.ofSeconds(waitSeconds + 10)))
+                            .build()).messages();
+                } catch (Exception e) {
+                    idleWorkers.release(requested);
+                    throw e;
+                }
+                if (!running) {
+                    idleWorkers.release(requested);
+                    releaseUnstarted(messages);
+                    return;
+                }
+                idleWorkers.release(requested - messages.size());
+                received.addAndGet(messages.size());
+                for (Message message : messages) {
+                    inFlight.put(message.messageId(), new InFlight(message.receiptHandle()));
+                    workers.execute(() -> process(message));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                Logger.warn(this, "Error receiving messages from SQS: " + e.getMessage() + ". Queue: " + queueUrl);
+                sleepQuietly(Math.min(20000, 1000L * Math.max(1, waitSeconds)));
+            }
+        }
+    }
+
+    private void process(final Message message) {
+        try {
+            handler.handle(message);
+            handled.incrementAndGet();
+            pendingAcks.add(message.receiptHandle());
+            if (pendingAcks.size() >= MAX_RECEIVE_MESSAGES) {
+                scheduler.execute(this::flushAcks);
+            }
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            Logger.warn(this, "Error handling SQS message " + message.messageId() + " (receive count "
+                    + message.attributes().get(MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT)
+                    + "): " + e.getMessage() + ". Queue: " + queueUrl);
+        } finally {
+            inFlight.remove(message.messageId());
+            idleWorkers.release();
+        }
+    }
+
+    private synchronized void flushAcks() {
+        try {
+            final List<String> receipts = new ArrayList<>(MAX_RECEIVE_MESSAGES);
+            while (pendingAcks.drainTo(receipts, MAX_RECEIVE_MESSAGES) > 0) {
+                final List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(receipts.size());
+                for (int i = 0; i < receipts.size(); i++) {
+                    entries.add(DeleteMessageBatchRequestEntry.builder().id(String.valueOf(i)).receiptHandle(receipts.get(i)).build());
+                }
+                try {
+                    final DeleteMessageBatchResponse response = client().deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                            .queueUrl(queueUrl)
+                            .entries(entries)
+                            .build());
+                    deleted.addAndGet(response.successful().size());
+                    for (BatchResultErrorEntry error : response.failed()) {
+                        Logger.warn(this, "SQS rejected delete of a handled message: " + error.code() + " " + error.message()
+                                + ". Queue: " + queueUrl);
+                    }
+                } catch (Exception e) {
+                    // The messages become visible again and are handled a second time
+                    Logger.warn(this, "Error deleting " + entries.size() + " handled messages from SQS: " + e.getMessage()
+                            + ". Queue: " + queueUrl);
+                }
+                receipts.clear();
+            }
+        } catch (Exception e) {
+            Logger.warn(this, "Error flushing SQS consumer acknowledgements: " + e.getMessage());
+        }
+    }
+
+    private void extendVisibility() {
+        try {
+            final long now = System.nanoTime();
+            final long extendAfter = TimeUnit.SECONDS.toNanos(visibilityTimeoutSeconds) / 2;
+            final List<InFlight> due = new ArrayList<>();
+            for (InFlight message : inFlight.values()) {
+                if (now - message.lastExtended >= extendAfter && now - message.received < maxProcessingNanos) {
+                    due.add(message);
+                }
+            }
+            for (int from = 0; from < due.size(); from += MAX_RECEIVE_MESSAGES) {
+                final List<InFlight> chunk = due.subList(from, Math.min(due.size(), from + MAX_RECEIVE_MESSAGES));
+                final List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(chunk.size());
+                for (int i = 0; i < chunk.size(); i++) {
+                    entries.add(ChangeMessageVisibilityBatchRequestEntry.builder()
+                            .id(String.valueOf(i))
+                            .receiptHandle(chunk.get(i).receiptHandle)
+                            .visibilityTimeout(visibilityTimeoutSeconds)
+                            .build());
+                }
+                final ChangeMessageVisibilityBatchResponse response = client().changeMessageVisibilityBatch(
+                        ChangeMessageVisibilityBatchRequest.builder().queueUrl(queueUrl).entries(entries).build());
+                for (int i = 0; i < chunk.size(); i++) {
+                    chunk.get(i).lastExtended = now;
+                }
+                extended.addAndGet(response.successful().size());
+            }
+        } catch (Exception e) {
+            Logger.warn(this, "Error extending SQS message visibility: " + e.getMessage() + ". Queue: " + queueUrl);
+        }
+    }
+
+    /**
+     * Makes messages received during shutdown visible again right away instead of after their timeout.
+     */
+    private void releaseUnstarted(final List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        try {
+            final List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                entries.add(ChangeMessageVisibilityBatchRequestEntry.builder()
+                        .id(String.valueOf(i))
+                        .receiptHandle(messages.get(i).receiptHandle())
+                        .visibilityTimeout(0)
+                        .build());
+            }
+            client().changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(entries)
+                    .build());
+        } catch (Exception e) {
+            Logger.warn(this, "Error releasing unhandled SQS messages: " + e.getMessage() + ". Queue: " + queueUrl);
+        }
+    }
+
+    private SqsClient client() {
+        return clients.get();
+    }
+
+    /**
+     * Resolved on every call, so saved App credentials are picked up and clients retired by the
+     * registry are not used. A site without its own App secrets uses those of the system host.
+     */
+    private static SqsClient clientOf(final Region region, final String hostId, final String endpoint) {
+        final AppConfig appConfig = SqsServices.appConfigCache().get(hostId);
+        return SqsServices.clientRegistry().getClient(region, appConfig, endpoint);
+    }
+
+    private static String queueName(final String queueUrl) {
+        final int slash = queueUrl.lastIndexOf('/');
+        return slash >= 0 ? queueUrl.substring(slash + 1) : queueUrl;
+    }
+
+    private static void sleepQuietly(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class InFlight {
+        final String receiptHandle;
+        final long received = System.nanoTime();
+        volatile long lastExtended = received;
+
+        InFlight(final String receiptHandle) {
+            this.receiptHandle = receiptHandle;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.util.Config;
+import com.dotmarketing.util.Logger;
+
+import java.time.Duration;
+
+/**
+ * Holds the long-lived services of the plugin. dotCMS instantiates actionlets reflectively, so
+ * they cannot receive these through a constructor; instead the {@link Activator} starts them here
+ * and the actionlet looks them up.
+ */
+public final class SqsServices {
+
+    private static volatile SqsClientRegistry clientRegistry;
+    private static volatile AppConfigCache appConfigCache;
+    private static volatile SqsAsyncDispatcher asyncDispatcher;
+    private static volatile SqsBatchDispatcher batchDispatcher;
+    private static volatile PayloadPipeline payloadPipeline;
+    private static volatile OutboxRelay outboxRelay;
+    private static volatile SendGuardRegistry sendGuards;
+    private static volatile SqsMetrics metrics;
+    private static volatile SqsConsumers consumers;
+    private static volatile MessageCoalescer coalescer;
+    private static volatile SqsMessageSender messageSender;
+
+    private SqsServices() {}
+
+    static synchronized void start() {
+        if (metrics == null) {
+            metrics = new SqsMetrics();
+            metrics.registerMBean();
+        }
+        if (sendGuards == null) {
+            sendGuards = new SendGuardRegistry(metrics);
+        }
+        if (appConfigCache == null) {
+            appConfigCache = new AppConfigCache();
+            final AppConfigCache cache = appConfigCache;
+            metrics.registerCounter("config_cache_hits_total", cache::getHits);
+            metrics.registerCounter("config_cache_misses_total", cache::getMisses);
+        }
+        if (payloadPipeline == null) {
+            payloadPipeline = new PayloadPipeline(
+                    Duration.ofSeconds(Config.getIntProperty("AWS_SQS_CLIENT_CLOSE_GRACE_SECONDS", 60)));
+            final PayloadPipeline pipeline = payloadPipeline;
+            metrics.registerCounter("payload_compressed_total", pipeline::getCompressedMessages);
+            metrics.registerCounter("payload_offloaded_total", pipeline::getOffloadedMessages);
+            metrics.registerGauge("payload_compression_ratio", pipeline::getCompressionRatio);
+        }
+        if (clientRegistry == null) {
+            clientRegistry = SqsClientRegistry.fromConfig();
+        }
+        if (coalescer == null) {
+            coalescer = MessageCoalescer.fromConfig();
+        }
+        if (asyncDispatcher == null) {
+            asyncDispatcher = SqsAsyncDispatcher.fromConfig(sendGuards);
+            final SqsAsyncDispatcher dispatcher = asyncDispatcher;
+            metrics.registerGauge("async_queue_depth", dispatcher::getQueueSize);
+            metrics.registerGauge("async_in_flight", dispatcher::getInFlight);
+            metrics.registerCounter("async_sent_total", dispatcher::getSent);
+            metrics.registerCounter("async_failed_total", dispatcher::getFailed);
+            // Messages lost to the DROP queue full policy
+            metrics.registerCounter("async_dropped_total", dispatcher::getDropped);
+        }
+        if (batchDispatcher == null) {
+            batchDispatcher = SqsBatchDispatcher.fromConfig(sendGuards);
+        }
+        if (outboxRelay == null) {
+            try {
+                // Resumes from the last committed offset of the previous run
+                outboxRelay = OutboxRelay.fromConfig(sendGuards);
+            } catch (Exception e) {
+                Logger.error(SqsServices.class, "Error opening AWS SQS outbox, outbox mode is unavailable: " + e.getMessage(), e);
+            }
+        }
+        if (consumers == null) {
+            consumers = SqsConsumers.fromConfig();
+        }
+        if (messageSender == null) {
+            messageSender = SqsMessageSender.fromServices();
+        }
+    }
+
+    static synchronized void stop() {
+        messageSender = null;
+        // Let running handlers finish and acknowledge their messages while the clients are still open
+        if (consumers != null) {
+            try {
+                consumers.shutdown(Duration.ofSeconds(Config.getIntProperty("AWS_SQS_CONSUMER_DRAIN_SECONDS", 30)));
+            } catch (Exception e) {
+                Logger.warn(SqsServices.class, "Error stopping SQS consumers: " + e.getMessage());
+            }
+            consumers = null;
+        }
+        // Held messages are handed to the dispatchers and the outbox, so release them first
+        if (coalescer != null) {
+            try {
+                coalescer.shutdown(Duration.ofSeconds(Config.getIntProperty("AWS_SQS_ASYNC_DRAIN_SECONDS", 30)));
+            } catch (Exception e) {
+                Logger.warn(SqsServices.class, "Error stopping SQS coalescer: " + e.getMessage());
+            }
+            coalescer = null;
+        }
+        if (outboxRelay != null) {
+            try {
+                outboxRelay.shutdown(Duration.ofSeconds(Config.getIntProperty("AWS_SQS_ASYNC_DRAIN_SECONDS", 30)));
+            } catch (Exception e) {
+                Logger.warn(SqsServices.class, "Error stopping AWS SQS outbox relay: " + e.getMessage());
+            }
+            outboxRelay = null;
+        }
+        // Drain pending async sends before their clients are closed
+        if (asyncDispatcher != null) {
+            try {
+                asyncDispatcher.shutdown(Duration.ofSeconds(Config.getIntProperty("AWS_SQS_ASYNC_DRAIN_SECONDS", 30)));
+            } catch (Exception e) {
+                Logger.warn(SqsServices.class, "Error draining SQS async dispatcher: " + e.getMessage());
+            }
+            asyncDispatcher = null;
+        }
+        if (batchDispatcher != null) {
+            try {
+                batchDispatcher.shutdown(Duration.ofSeconds(Config.getIntProperty("AWS_SQS_ASYNC_DRAIN_SECONDS", 30)));
+            } catch (Exception e) {
+                Logger.warn(SqsServices.class, "Error draining SQS batch dispatcher: " + e.getMessage());
+            }
+            batchDispatcher = null;
+        }
+        if (clientRegistry != null) {
+            try {
+                clientRegistry.shutdown();
+            } catch (Exception e) {
+                Logger.warn(SqsServices.class, "Error shutting down SQS client registry: " + e.getMessage());
+            }
+            clientRegistry = null;
+        }
+        if (payloadPipeline != null) {
+            payloadPipeline.shutdown();
+            payloadPipeline = null;
+        }
+        appConfigCache = null;
+        sendGuards = null;
+        if (metrics != null) {
+            metrics.unregisterMBean();
+            metrics = null;
+        }
+    }
+
+    public static SqsClientRegistry clientRegistry() {
+        final SqsClientRegistry registry = clientRegistry;
+        if (registry == null) {
+            throw new IllegalStateException("AWS SQS plugin services are not started");
+        }
+        return registry;
+    }
+
+    public static AppConfigCache appConfigCache() {
+        final AppConfigCache cache = appConfigCache;
+        if (cache == null) {
+            throw new IllegalStateException("AWS SQS plugin services are not started");
+        }
+        return cache;
+    }
+
+    public static SqsAsyncDispatcher asyncDispatcher() {
+        final SqsAsyncDispatcher dispatcher = asyncDispatcher;
+        if (dispatcher == null) {
+            throw new IllegalStateException("AWS SQS plugin services are not started");
+        }
+        return dispatcher;
+    }
+
+    public static SqsBatchDispatcher batchDispatcher() {
+        final SqsBatchDispatcher dispatcher = batchDispatcher;
+        if (dispatcher == null) {
+            throw new IllegalStateException("AWS SQS plugin services are not started");
+        }
+        return dispatcher;
+    }
+
+    public static PayloadPipeline payloadPipeline() {
+        final PayloadPipeline pipeline = payloadPipeline;
+        if (pipeline == null) {
+            throw new IllegalStateException("AWS SQS plugin services are not started");
+        }
+        return pipeline;
+    }
+
+    public static OutboxRelay outboxRelay() {
+        final OutboxRelay relay = outboxRelay;
+        if (relay == null) {
+            throw new IllegalStateException("AWS SQS outbox is not available");
+        }
+        return relay;
+    }
+
+    public static SqsMetrics metrics() {
+        final SqsMetrics current = metrics;
+        if (current == null) {
+            throw new IllegalStateException("AWS SQS plugin services are not started");
+        }
+        return current;
+    }
+
+    public static SqsConsumers consumers() {
+        final SqsConsumers current = consumers;
+        if (current == null) {
+            throw new IllegalStateException("AWS SQS plugin services are not started");
+        }
+        return current;
+    }
+
+    public static MessageCoalescer coalescer() {
+        final MessageCoalescer current = coalescer;
+        if (current == null) {
+            throw new IllegalStateException("AWS SQS plugin services are not started");
+        }
+        return current;
+    }
+
+    public static SqsMessageSender messageSender() {
+        final SqsMessageSender sender = messageSender;
+        if (sender == null) {
+            throw new IllegalStateException("AWS SQS plugin services are not started");
+        }
+        return sender;
+    }
+
+    public static boolean isOutboxAvailable() {
+        return outboxRelay != null;
+    }
+
+    public static SendGuardRegistry sendGuards() {
+        final SendGuardRegistry guards = sendGuards;
+        if (guards == null) {
+            throw new IllegalStateException("AWS SQS plugin services are not started");
+        }
+        return guards;
+    }
+
+    /**
+     * Called when the App secrets of a site change: reloads its configuration and retires the
+     * clients built with the old credentials. The pending batches are drained in the background,
+     * so the event returns without waiting for outstanding FIFO batches.
+     *
+     * @param hostId the site whose secrets were saved, or null to reload every site
+     */
+    static void onAppSecretsChanged(final String hostId) {
+        final AppConfigCache cache = appConfigCache;
+        if (cache != null) {
+            cache.refresh(hostId);
+        }
+        final PayloadPipeline pipeline = payloadPipeline;
+        if (pipeline != null) {
+            pipeline.reset();
+        }
+        final SqsClientRegistry registry = clientRegistry;
+        if (registry != null) {
+            if (hostId == null || hostId.isEmpty()) {
+                registry.invalidateAll();
+            } else {
+                // Sites without their own secrets use the clients of the system host
+                registry.invalidateTenant(hostId);
+            }
+        }
+        // Batches are kept per client, so new messages already go to fresh batches of the new clients
+        final SqsBatchDispatcher batcher = batchDispatcher;
+        if (batcher != null) {
+            final Duration timeout = Duration.ofSeconds(Config.getIntProperty("AWS_SQS_ASYNC_DRAIN_SECONDS", 30));
+            final Thread reset = new Thread(() -> batcher.reset(timeout), "dotsqs-batch-reset");
+            reset.setDaemon(true);
+            reset.start();
+        }
+    }
+}
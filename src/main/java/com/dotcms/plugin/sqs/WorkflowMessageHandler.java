@@ -0,0 +1,107 @@
+package com.dotcms.plugin.sqs;
+
+import com.dotmarketing.business.APILocator;
+import com.dotmarketing.db.DbConnectionFactory;
+import com.dotmarketing.portlets.contentlet.model.Contentlet;
+import com.dotmarketing.portlets.contentlet.model.ContentletDependencies;
+import com.dotmarketing.portlets.contentlet.model.IndexPolicy;
+import com.dotmarketing.util.Logger;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.liferay.portal.model.User;
+
+import java.util.Map;
+
+import software.amazon.awssdk.services.sqs.model.Message;
+
+/**
+ * Fires a workflow action on a contentlet for every received message. The message body is a JSON
+ * object:
+ * <pre>
+ * {
+ *   "actionId": "b9d89c80-3d88-4311-8365-187323c96436",
+ *   "identifier": "cc0999408766ecfe8ffd8b0618b4d7a4",
+ *   "contentType": "Blog",
+ *   "languageId": 1,
+ *   "fields": {"title": "Updated title"},
+ *   "comments": "Updated from SQS"
+ * }
+ * </pre>
+ * With an {@code identifier} the working version of the existing contentlet is checked out and the
+ * fields are applied on top of it; without one a new contentlet of {@code contentType} is created.
+ * {@code actionId} falls back to the configured default action.
+ */
+public class WorkflowMessageHandler implements SqsMessageHandler {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    private final String defaultActionId;
+    private final String userId;
+
+    /**
+     * @param defaultActionId the workflow action fired when the message does not name one, may be null
+     * @param userId          the user the action is fired as, or null for the system user
+     */
+    public WorkflowMessageHandler(final String defaultActionId, final String userId) {
+        this.defaultActionId = defaultActionId;
+        this.userId = userId;
+    }
+
+    @Override
+    public void handle(final Message message) throws Exception {
+        try {
+            final Map<String, Object> payload = MAPPER.readValue(message.body(), MAP_TYPE);
+            final String actionId = stringValue(payload.get("actionId"), defaultActionId);
+            if (actionId == null) {
+                throw new IllegalArgumentException("Message " + message.messageId() + " does not name a workflow action");
+            }
+            final User user = userId != null ? APILocator.getUserAPI().loadUserById(userId) : APILocator.systemUser();
+            final long languageId = payload.get("languageId") instanceof Number
+                    ? ((Number) payload.get("languageId")).longValue()
+                    : APILocator.getLanguageAPI().getDefaultLanguage().getId();
+
+            final Contentlet contentlet;
+            final String identifier = stringValue(payload.get("identifier"), null);
+            if (identifier != null) {
+                final Contentlet existing = APILocator.getContentletAPI()
+                        .findContentletByIdentifier(identifier, false, languageId, user, false);
+                if (existing == null) {
+                    throw new IllegalArgumentException("Message " + message.messageId() + " names contentlet " + identifier
+                            + ", which does not exist in language " + languageId);
+                }
+                contentlet = APILocator.getContentletAPI().checkout(existing.getInode(), user, false);
+            } else {
+                final String contentType = stringValue(payload.get("contentType"), null);
+                if (contentType == null) {
+                    throw new IllegalArgumentException("Message " + message.messageId() + " has neither an identifier nor a contentType");
+                }
+                contentlet = new Contentlet();
+                contentlet.setContentTypeId(APILocator.getContentTypeAPI(user).find(contentType).id());
+                contentlet.setLanguageId(languageId);
+            }
+
+            if (payload.get("fields") instanceof Map) {
+                for (Map.Entry<?, ?> field : ((Map<?, ?>) payload.get("fields")).entrySet()) {
+                    contentlet.setProperty(String.valueOf(field.getKey()), field.getValue());
+                }
+            }
+
+            final Contentlet result = APILocator.getWorkflowAPI().fireContentWorkflow(contentlet,
+                    new ContentletDependencies.Builder()
+                            .modUser(user)
+                            .workflowActionId(actionId)
+                            .workflowActionComments(stringValue(payload.get("comments"), null))
+                            .indexPolicy(IndexPolicy.DEFER)
+                            .build());
+            Logger.debug(this, "Fired workflow action " + actionId + " on contentlet " + result.getIdentifier()
+                    + " for SQS message " + message.messageId());
+        } finally {
+            DbConnectionFactory.closeSilently();
+        }
+    }
+
+    private static String stringValue(final Object value, final String defaultValue) {
+        return value != null && !String.valueOf(value).trim().isEmpty() ? String.valueOf(value).trim() : defaultValue;
+    }
+}